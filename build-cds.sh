@@ -0,0 +1,35 @@
+#!/bin/sh
+# Builds the CLI into build/ticketing.jar and creates a class data sharing
+# (CDS) archive of the classes loaded on the way to the first ticket sale,
+# so later starts map them from the archive instead of loading, parsing and
+# verifying them again. Then compares startup with and without the archive.
+#
+# Usage: ./build-cds.sh [tickets]
+# Run:   java -XX:SharedArchiveFile=build/ticketing.jsa -jar build/ticketing.jar
+#
+# The archive only matches the JDK and jar it was created with; rebuild it
+# after changing either.
+set -e
+cd "$(dirname "$0")"
+TICKETS=${1:-100000}
+
+rm -rf build
+mkdir -p build/classes
+javac -encoding UTF-8 -d build/classes src/*.java
+jar --create --file build/ticketing.jar --main-class TicketingSystemCLI -C build/classes .
+
+# Training run: record every class loaded during a startup and dump them
+java -XX:ArchiveClassesAtExit=build/ticketing.jsa -cp build/ticketing.jar \
+    StartupBenchmark --tickets "$TICKETS" > /dev/null
+
+for mode in default cds; do
+    echo "== Startup ($mode) =="
+    for run in 1 2 3; do
+        if [ "$mode" = cds ]; then
+            java -XX:SharedArchiveFile=build/ticketing.jsa -cp build/ticketing.jar \
+                StartupBenchmark --tickets "$TICKETS" | grep "Time to first sale"
+        else
+            java -cp build/ticketing.jar StartupBenchmark --tickets "$TICKETS" | grep "Time to first sale"
+        fi
+    done
+done
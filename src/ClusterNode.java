@@ -0,0 +1,628 @@
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Runs one partition of a clustered ticket pool. Each node owns its own
+ * {@link TicketPool} (its share of the inventory and capacity) and talks to
+ * the other nodes over non-blocking sockets using a small binary protocol.
+ * When the local partition runs dry while its buyers still want tickets, the
+ * node asks a peer for tickets; tickets are removed from the donor before
+ * they are sent and move together with the capacity needed to hold them, so
+ * the cluster never exceeds its combined capacity and a ticket is never in
+ * two partitions at once. A ticket in
+ * flight to a node that crashes before reading it is lost, never duplicated.
+ *
+ * Frame layout: int length (of everything after it), byte type, payload.
+ * HELLO(int nodeId), STEAL(int wanted, int freeCapacity),
+ * GRANT(int capacity, int count, int[count] ticketIds), GOODBYE().
+ * Large grants are split over several GRANT frames. A peer sending a frame
+ * that is too long or does not match its type's layout is disconnected.
+ */
+public class ClusterNode implements Runnable {
+    public static final int MAX_NODES = 64;
+
+    private static final byte HELLO = 1;
+    private static final byte STEAL = 2;
+    private static final byte GRANT = 3;
+    private static final byte GOODBYE = 4;
+    private static final int MAX_TICKETS_PER_STEAL = 4096;
+    private static final int MAX_TICKETS_PER_FRAME = 65536;
+    private static final int MAX_FRAME_LENGTH = 1 + 8 + 4 * MAX_TICKETS_PER_FRAME;
+    private static final long STEAL_TIMEOUT_MS = 1000;
+    private static final long RECONNECT_INTERVAL_MS = 2000;
+    private static final long LEAVE_FLUSH_TIMEOUT_MS = 5000;
+
+    private final int nodeId;
+    private final String bindHost;
+    private final int port;
+    private final List<InetSocketAddress> seedPeers;
+    private final TicketPool ticketPool;
+    private final List<Peer> peers = new ArrayList<>();
+    private final OutputConsole console = OutputConsole.getInstance();
+    private Selector selector;
+    private volatile boolean leaving;
+    private boolean handedOver;
+    private volatile boolean stopped;
+    private long stealSentAt;
+    private long demandSeen;
+    private int nextStealPeer;
+    private long lastConnectAttempt;
+
+    /**
+     * Creates a cluster node
+     *
+     * @param nodeId     Unique id of this node (0 to MAX_NODES - 1)
+     * @param bindHost   Local address to listen on; 127.0.0.1 for a cluster
+     *                   on one machine, 0.0.0.0 or this host's address
+     *                   for nodes on other hosts
+     * @param port       Port to listen on for other nodes
+     * @param seedPeers  Addresses of nodes to connect to when joining
+     * @param ticketPool The local partition of the ticket pool
+     */
+    public ClusterNode(int nodeId, String bindHost, int port, List<InetSocketAddress> seedPeers,
+            TicketPool ticketPool) {
+        if (nodeId < 0 || nodeId >= MAX_NODES) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + (MAX_NODES - 1) + ".");
+        }
+        this.nodeId = nodeId;
+        this.bindHost = bindHost;
+        this.port = port;
+        this.seedPeers = seedPeers;
+        this.ticketPool = ticketPool;
+    }
+
+    /**
+     * Numbers tickets issued by this node's pool so that they cannot collide
+     * with tickets issued by any other node. Call before the pool is seeded.
+     */
+    public static void assignTicketIds(int nodeId, TicketPool ticketPool) {
+        ticketPool.setTicketIdSequence(nodeId + 1, MAX_NODES);
+    }
+
+    /**
+     * Main network loop. Accepts and connects to peers, serves their ticket
+     * requests and asks for tickets whenever the local partition is empty.
+     * Runs until {@link #leave()} is called or the thread is interrupted.
+     */
+    @Override
+    public void run() {
+        try (Selector sel = Selector.open(); ServerSocketChannel server = ServerSocketChannel.open()) {
+            selector = sel;
+            server.bind(new InetSocketAddress(bindHost, port));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            console.printSystem(String.format("Cluster node %d listening on %s:%d", nodeId, bindHost, port));
+
+            while (!leaving && !Thread.currentThread().isInterrupted()) {
+                connectToSeeds();
+                selector.select(100);
+                handleSelectedKeys();
+                requestTicketsIfDry();
+            }
+            handOverAndLeave();
+        } catch (IOException e) {
+            console.printSystem("Cluster node " + nodeId + " stopped: " + e.getMessage());
+        } finally {
+            for (Peer peer : new ArrayList<>(peers)) {
+                close(peer);
+            }
+            stopped = true;
+        }
+    }
+
+    /**
+     * Asks the node to leave the cluster. Its remaining tickets and capacity
+     * are handed to a connected peer before the connections are closed.
+     */
+    public void leave() {
+        leaving = true;
+        Selector sel = selector;
+        if (sel != null) {
+            sel.wakeup();
+        }
+    }
+
+    /**
+     * Returns true once the node has left the cluster
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Returns a one-line summary of this node's state
+     */
+    public String getStatus() {
+        int connected = 0;
+        synchronized (peers) {
+            for (Peer peer : peers) {
+                if (peer.nodeId >= 0) {
+                    connected++;
+                }
+            }
+        }
+        return String.format("node %d on port %d, %d peer(s) connected, partition capacity %d",
+                nodeId, port, connected, ticketPool.getMaxTicketCapacity());
+    }
+
+    private void connectToSeeds() {
+        long now = System.currentTimeMillis();
+        if (now - lastConnectAttempt < RECONNECT_INTERVAL_MS) {
+            return;
+        }
+        lastConnectAttempt = now;
+        for (InetSocketAddress address : seedPeers) {
+            if (isConnectedTo(address)) {
+                continue;
+            }
+            Peer peer = null;
+            try {
+                SocketChannel channel = SocketChannel.open();
+                peer = new Peer(channel, address);
+                addPeer(peer);
+                channel.configureBlocking(false);
+                if (channel.connect(address)) {
+                    channel.register(selector, SelectionKey.OP_READ, peer);
+                    sendHello(peer);
+                } else {
+                    channel.register(selector, SelectionKey.OP_CONNECT, peer);
+                }
+            } catch (IOException e) {
+                console.printSystem("Cluster node " + nodeId + " could not reach " + address);
+                if (peer != null) {
+                    close(peer);
+                }
+            }
+        }
+    }
+
+    private void handleSelectedKeys() throws IOException {
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            if (!key.isValid()) {
+                continue;
+            }
+            if (key.isAcceptable()) {
+                SocketChannel channel = ((ServerSocketChannel) key.channel()).accept();
+                if (channel != null) {
+                    channel.configureBlocking(false);
+                    Peer peer = new Peer(channel, null);
+                    addPeer(peer);
+                    channel.register(selector, SelectionKey.OP_READ, peer);
+                    sendHello(peer);
+                }
+                continue;
+            }
+
+            Peer peer = (Peer) key.attachment();
+            try {
+                if (key.isConnectable() && peer.channel.finishConnect()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                    sendHello(peer);
+                }
+                if (key.isValid() && key.isReadable()) {
+                    read(peer);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    flush(peer);
+                }
+            } catch (ProtocolException e) {
+                console.printSystem(String.format("Cluster node %d dropped node %d: %s",
+                        nodeId, peer.nodeId, e.getMessage()));
+                close(peer);
+            } catch (IOException e) {
+                close(peer);
+            }
+        }
+    }
+
+    /**
+     * Sends a STEAL request to the next connected peer when the local
+     * partition has no tickets left, local buyers have wanted tickets since
+     * the last request, and no request is already outstanding. A node whose
+     * buyers are idle or stopped never takes tickets from its peers.
+     */
+    private void requestTicketsIfDry() {
+        if (leaving || ticketPool.getTicketCount() > 0) {
+            return;
+        }
+        long demand = ticketPool.getUnmetDemand();
+        if (demand == demandSeen) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (stealSentAt != 0 && now - stealSentAt < STEAL_TIMEOUT_MS) {
+            return;
+        }
+        List<Peer> ready = readyPeers();
+        if (ready.isEmpty()) {
+            return;
+        }
+        Peer peer = ready.get(nextStealPeer++ % ready.size());
+        int freeCapacity = Math.max(0, ticketPool.getMaxTicketCapacity() - ticketPool.getTicketCount());
+        int wanted = Math.min(MAX_TICKETS_PER_STEAL, Math.max(1, freeCapacity));
+        ByteBuffer frame = newFrame(STEAL, 8);
+        frame.putInt(wanted).putInt(freeCapacity);
+        send(peer, frame, null);
+        peer.pendingGrants++;
+        stealSentAt = now;
+        demandSeen = demand;
+    }
+
+    private void read(Peer peer) throws IOException {
+        if (peer.channel.read(peer.readBuffer) < 0) {
+            close(peer);
+            return;
+        }
+        peer.readBuffer.flip();
+        while (peer.channel.isOpen() && peer.readBuffer.remaining() >= 4) {
+            int start = peer.readBuffer.position();
+            int length = peer.readBuffer.getInt(start);
+            if (length < 1 || length > MAX_FRAME_LENGTH) {
+                throw new ProtocolException("frame length " + length + " out of range");
+            }
+            if (peer.readBuffer.remaining() < 4 + length) {
+                break;
+            }
+            byte type = peer.readBuffer.get(start + 4);
+            ByteBuffer payload = peer.readBuffer.slice(start + 5, length - 1);
+            peer.readBuffer.position(start + 4 + length);
+            handleFrame(peer, type, payload);
+            if (payload.hasRemaining()) {
+                throw new ProtocolException("frame type " + type + " has " + payload.remaining() + " extra byte(s)");
+            }
+        }
+        peer.readBuffer.compact();
+        if (!peer.readBuffer.hasRemaining()) {
+            ByteBuffer larger = ByteBuffer.allocate(peer.readBuffer.capacity() * 2);
+            peer.readBuffer.flip();
+            larger.put(peer.readBuffer);
+            peer.readBuffer = larger;
+        }
+    }
+
+    /**
+     * Handles one frame whose payload is exactly the bytes in {@code in}.
+     * Every payload is checked against its type's layout before anything is
+     * changed, so a malformed frame has no effect.
+     *
+     * @throws ProtocolException if the payload does not match the layout
+     */
+    private void handleFrame(Peer peer, byte type, ByteBuffer in) throws ProtocolException {
+        switch (type) {
+            case HELLO:
+                expectPayload(type, in, 4);
+                int helloId = in.getInt();
+                if (helloId < 0 || helloId >= MAX_NODES) {
+                    throw new ProtocolException("node id " + helloId + " out of range");
+                }
+                peer.nodeId = helloId;
+                console.printSystem(String.format("Cluster node %d connected to node %d", nodeId, peer.nodeId));
+                break;
+            case STEAL:
+                expectPayload(type, in, 8);
+                int wanted = in.getInt();
+                int freeCapacity = in.getInt();
+                if (wanted < 0 || freeCapacity < 0) {
+                    throw new ProtocolException("negative STEAL request");
+                }
+                TicketTransfer transfer = leaving
+                        ? new TicketTransfer(new int[0], 0)
+                        : ticketPool.transferOut(Math.min(wanted, MAX_TICKETS_PER_STEAL), freeCapacity);
+                sendGrant(peer, transfer);
+                break;
+            case GRANT:
+                if (in.remaining() < 8) {
+                    throw new ProtocolException("GRANT frame too short");
+                }
+                int capacity = in.getInt();
+                int count = in.getInt();
+                if (capacity < 0 || count < 0 || in.remaining() != 4L * count) {
+                    throw new ProtocolException("GRANT of " + count + " ticket(s) in " + in.remaining() + " byte(s)");
+                }
+                int[] tickets = new int[count];
+                for (int i = 0; i < tickets.length; i++) {
+                    tickets[i] = in.getInt();
+                }
+                TicketTransfer received = new TicketTransfer(tickets, capacity);
+                if (peer.pendingGrants > 0) {
+                    peer.pendingGrants--;
+                }
+                if (handedOver) {
+                    // The partition is already handed over, so pass the grant back rather than strand it
+                    if (!received.isEmpty()) {
+                        console.printSystem(String.format("Cluster node %d returned %d ticket(s) granted after it left",
+                                nodeId, tickets.length));
+                        handOn(received, peer);
+                    }
+                    break;
+                }
+                handOn(ticketPool.acceptTransfer(received), peer);
+                if (!received.isEmpty()) {
+                    stealSentAt = 0; // got something, ask again straight away if it runs out
+                    console.printSystem(String.format("Cluster node %d received %d ticket(s) and %d capacity from node %d",
+                            nodeId, tickets.length, capacity, peer.nodeId));
+                }
+                break;
+            case GOODBYE:
+                expectPayload(type, in, 0);
+                peer.departed = true;
+                if (handedOver) {
+                    break; // the peer acknowledging our own goodbye
+                }
+                console.printSystem(String.format("Cluster node %d saw node %d leave the cluster", nodeId, peer.nodeId));
+                // Every grant owed to the leaving node is queued ahead of this, so acknowledge;
+                // the connection stays open until it closes, in case it passes grants back
+                send(peer, newFrame(GOODBYE, 0), null);
+                break;
+            default:
+                throw new ProtocolException("unknown frame type " + type);
+        }
+    }
+
+    private static void expectPayload(byte type, ByteBuffer in, int length) throws ProtocolException {
+        if (in.remaining() != length) {
+            throw new ProtocolException("frame type " + type + " has " + in.remaining() + " byte(s), expected " + length);
+        }
+    }
+
+    private void sendHello(Peer peer) {
+        ByteBuffer frame = newFrame(HELLO, 4);
+        frame.putInt(nodeId);
+        send(peer, frame, null);
+    }
+
+    /**
+     * Sends a transfer as one GRANT frame, or several if it holds more than
+     * MAX_TICKETS_PER_FRAME tickets. Each part carries one unit of capacity
+     * per ticket and the last part carries the rest.
+     */
+    private void sendGrant(Peer peer, TicketTransfer transfer) {
+        int[] tickets = transfer.getTickets();
+        int capacityLeft = transfer.getCapacity();
+        int from = 0;
+        do {
+            int to = Math.min(tickets.length, from + MAX_TICKETS_PER_FRAME);
+            int[] part = to - from == tickets.length ? tickets : Arrays.copyOfRange(tickets, from, to);
+            int capacity = to == tickets.length ? capacityLeft : Math.min(capacityLeft, part.length);
+            capacityLeft -= capacity;
+            TicketTransfer partTransfer = new TicketTransfer(part, capacity);
+            ByteBuffer frame = newFrame(GRANT, 8 + 4 * part.length);
+            frame.putInt(capacity).putInt(part.length);
+            for (int ticket : part) {
+                frame.putInt(ticket);
+            }
+            send(peer, frame, partTransfer.isEmpty() ? null : partTransfer);
+            from = to;
+        } while (from < tickets.length);
+        if (!transfer.isEmpty()) {
+            console.printSystem(String.format("Cluster node %d gave %d ticket(s) and %d capacity to node %d",
+                    nodeId, tickets.length, transfer.getCapacity(), peer.nodeId));
+        }
+    }
+
+    /**
+     * Waits (bounded) for answers to STEAL requests already sent, then hands
+     * the whole partition to a connected peer and says goodbye to every
+     * peer. Each peer acknowledges the goodbye after any grant it still owed
+     * this node; those grants are passed back to their senders. Waits
+     * (bounded) for every acknowledgement and for the frames to be written.
+     */
+    private void handOverAndLeave() throws IOException {
+        long grantDeadline = System.currentTimeMillis() + STEAL_TIMEOUT_MS;
+        while (hasPendingGrants() && System.currentTimeMillis() < grantDeadline) {
+            selector.select(50);
+            handleSelectedKeys();
+        }
+        handedOver = true;
+        List<Peer> ready = readyPeers();
+        if (!ready.isEmpty()) {
+            sendGrant(ready.get(0), ticketPool.transferAll());
+        }
+        for (Peer peer : ready) {
+            send(peer, newFrame(GOODBYE, 0), null);
+        }
+        long deadline = System.currentTimeMillis() + LEAVE_FLUSH_TIMEOUT_MS;
+        while ((hasPendingWrites() || !readyPeers().isEmpty()) && System.currentTimeMillis() < deadline) {
+            selector.select(50);
+            handleSelectedKeys();
+        }
+        console.printSystem("Cluster node " + nodeId + " left the cluster");
+    }
+
+    private static ByteBuffer newFrame(byte type, int payloadLength) {
+        ByteBuffer frame = ByteBuffer.allocate(5 + payloadLength);
+        frame.putInt(1 + payloadLength).put(type);
+        return frame;
+    }
+
+    /**
+     * Queues a frame for a peer. A frame carrying a ticket transfer is kept
+     * with it so the transfer can be taken back if the frame is never fully
+     * written.
+     */
+    private void send(Peer peer, ByteBuffer frame, TicketTransfer transfer) {
+        frame.flip();
+        peer.outbox.add(new OutgoingFrame(frame, transfer));
+        try {
+            flush(peer);
+        } catch (IOException e) {
+            close(peer);
+        }
+    }
+
+    private void flush(Peer peer) throws IOException {
+        while (!peer.outbox.isEmpty()) {
+            OutgoingFrame next = peer.outbox.peek();
+            peer.channel.write(next.buffer);
+            if (next.buffer.hasRemaining()) {
+                break;
+            }
+            peer.outbox.poll();
+        }
+        SelectionKey key = peer.channel.keyFor(selector);
+        if (key != null && key.isValid() && peer.channel.isConnected()) {
+            key.interestOps(peer.outbox.isEmpty()
+                    ? SelectionKey.OP_READ
+                    : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Closes a peer connection and returns any transfer that did not make it
+     * onto the wire to the local pool
+     */
+    private void close(Peer peer) {
+        synchronized (peers) {
+            peers.remove(peer);
+        }
+        List<OutgoingFrame> unsent = new ArrayList<>(peer.outbox);
+        peer.outbox.clear();
+        for (OutgoingFrame frame : unsent) {
+            if (frame.transfer != null) {
+                handOn(handedOver ? frame.transfer : ticketPool.acceptTransfer(frame.transfer), null);
+                console.printSystem(String.format("Cluster node %d took back %d ticket(s) from a failed transfer",
+                        nodeId, frame.transfer.getTickets().length));
+            }
+        }
+        try {
+            peer.channel.close();
+        } catch (IOException e) {
+            // already closed
+        }
+    }
+
+    /**
+     * Sends tickets the local partition had no room for to the given peer,
+     * or to any connected peer if it is gone (null for any peer)
+     */
+    private void handOn(TicketTransfer overflow, Peer preferred) {
+        if (overflow.isEmpty()) {
+            return;
+        }
+        List<Peer> ready = readyPeers();
+        if (preferred != null && ready.contains(preferred)) {
+            sendGrant(preferred, overflow);
+        } else if (!ready.isEmpty()) {
+            sendGrant(ready.get(0), overflow);
+        } else {
+            console.printSystem(String.format("Cluster node %d lost %d ticket(s): no room here and no peer to take them",
+                    nodeId, overflow.getTickets().length));
+        }
+    }
+
+    private void addPeer(Peer peer) {
+        synchronized (peers) {
+            peers.add(peer);
+        }
+    }
+
+    private List<Peer> readyPeers() {
+        List<Peer> ready = new ArrayList<>();
+        synchronized (peers) {
+            for (Peer peer : peers) {
+                if (peer.nodeId >= 0 && !peer.departed && peer.channel.isConnected()) {
+                    ready.add(peer);
+                }
+            }
+        }
+        return ready;
+    }
+
+    private boolean isConnectedTo(InetSocketAddress address) {
+        synchronized (peers) {
+            for (Peer peer : peers) {
+                if (address.equals(peer.seedAddress)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean hasPendingGrants() {
+        synchronized (peers) {
+            for (Peer peer : peers) {
+                if (peer.pendingGrants > 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean hasPendingWrites() {
+        synchronized (peers) {
+            for (Peer peer : peers) {
+                if (!peer.outbox.isEmpty()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses a comma separated list of "host:port" peer addresses
+     */
+    public static List<InetSocketAddress> parsePeers(String list) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String entry : list.split(",")) {
+            String trimmed = entry.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int colon = trimmed.lastIndexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("Peer must be host:port, got " + trimmed);
+            }
+            addresses.add(new InetSocketAddress(trimmed.substring(0, colon),
+                    Integer.parseInt(trimmed.substring(colon + 1))));
+        }
+        return addresses;
+    }
+
+    /**
+     * Connection state for one peer
+     */
+    private static final class Peer {
+        private final SocketChannel channel;
+        private final InetSocketAddress seedAddress;
+        private final ArrayDeque<OutgoingFrame> outbox = new ArrayDeque<>();
+        private ByteBuffer readBuffer = ByteBuffer.allocate(16 * 1024);
+        private volatile int nodeId = -1;
+        private int pendingGrants; // STEALs sent to this peer that it has not answered yet
+        private boolean departed; // sent GOODBYE; kept open only to receive grants passed back
+
+        private Peer(SocketChannel channel, InetSocketAddress seedAddress) {
+            this.channel = channel;
+            this.seedAddress = seedAddress;
+        }
+    }
+
+    /**
+     * A queued frame and the ticket transfer it carries, if any
+     */
+    private static final class OutgoingFrame {
+        private final ByteBuffer buffer;
+        private final TicketTransfer transfer;
+
+        private OutgoingFrame(ByteBuffer buffer, TicketTransfer transfer) {
+            this.buffer = buffer;
+            this.transfer = transfer;
+        }
+    }
+}
@@ -0,0 +1,483 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Stress and linearizability harness for ticket pool implementations.
+ * Drives a {@link TicketInventory} with thousands of vendor and customer
+ * threads using seeded random interleavings, records every operation with
+ * its invocation and response time, and then checks the recorded history:
+ * - every sold ticket was issued, and is sold at most once (no double-sell)
+ * - no ticket is sold before the add that issued it started
+ * - issued tickets = sold tickets + tickets left in the pool (none lost)
+ * - the pool never provably held more than its capacity (no oversell)
+ * - no sale reported "empty" while the pool provably held tickets, and no
+ *   add reported "full" while the pool provably had room
+ * It also reports the throughput reached.
+ *
+ * Usage: java ConcurrencyStressHarness [--threads N] [--ops N] [--capacity N]
+ * [--rounds N] [--seed N] [--fair] [--pool heap|shared]
+ */
+public class ConcurrencyStressHarness {
+    private static final byte ADD = 0;
+    private static final byte REMOVE = 1;
+    private static final byte REMOVE_VIP = 2;
+    private static final int NONE = -1;
+
+    private final int threads;
+    private final int opsPerThread;
+    private final int capacity;
+    private final long seed;
+
+    /**
+     * Creates a harness run configuration
+     *
+     * @param threads      Number of concurrent vendor and customer threads
+     * @param opsPerThread Operations each thread performs
+     * @param capacity     Pool capacity to configure
+     * @param seed         Seed for the random interleavings
+     */
+    public ConcurrencyStressHarness(int threads, int opsPerThread, int capacity, long seed) {
+        this.threads = threads;
+        this.opsPerThread = opsPerThread;
+        this.capacity = capacity;
+        this.seed = seed;
+    }
+
+    /**
+     * Runs one round against a fresh pool from the factory and checks it
+     *
+     * @param poolFactory Creates the pool implementation under test
+     * @return The result of the round
+     */
+    public Result run(Supplier<TicketInventory> poolFactory) throws InterruptedException {
+        TicketInventory pool = poolFactory.get();
+        pool.setMaxTicketCapacity(capacity);
+        History[] histories = new History[threads];
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        AtomicInteger observedOverCapacity = new AtomicInteger();
+        List<Thread> workers = new ArrayList<>(threads);
+
+        for (int t = 0; t < threads; t++) {
+            History history = new History(opsPerThread);
+            histories[t] = history;
+            Random random = new Random(seed * 31 + t);
+            boolean vendor = t % 2 == 0;
+            int buyerId = t + 1;
+            String name = (vendor ? "Vendor-" : "Customer-") + t;
+            Thread worker = new Thread(() -> {
+                ready.countDown();
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int op = 0; op < opsPerThread; op++) {
+                    jitter(random);
+                    byte type = vendor ? ADD : (random.nextInt(4) == 0 ? REMOVE_VIP : REMOVE);
+                    long invoked = System.nanoTime();
+                    Integer ticket;
+                    if (type == ADD) {
+                        ticket = pool.addTicket(name);
+                    } else if (type == REMOVE) {
+                        ticket = pool.removeTicket(buyerId, name);
+                    } else {
+                        ticket = pool.removeVIPTicket(buyerId, name);
+                    }
+                    history.record(type, ticket == null ? NONE : ticket, invoked, System.nanoTime());
+                }
+            }, name);
+            workers.add(worker);
+            worker.start();
+        }
+
+        Thread sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (pool.getTicketCount() > capacity) {
+                    observedOverCapacity.incrementAndGet();
+                }
+                LockSupport.parkNanos(50_000);
+            }
+        }, "capacity-sampler");
+        sampler.setDaemon(true);
+
+        ready.await();
+        sampler.start();
+        long started = System.nanoTime();
+        go.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - started;
+        sampler.interrupt();
+
+        List<Integer> remaining = new ArrayList<>();
+        int drainBuyerId = threads + 1; // after every worker's id
+        Integer ticket;
+        while ((ticket = pool.removeVIPTicket(drainBuyerId, "drain")) != null) {
+            remaining.add(ticket);
+        }
+        if (pool instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) pool).close();
+            } catch (Exception e) {
+                System.out.println("Could not close pool: " + e.getMessage());
+            }
+        }
+        return check(histories, remaining, elapsed, observedOverCapacity.get());
+    }
+
+    /**
+     * Randomly yields, spins or parks to vary how threads interleave
+     */
+    private static void jitter(Random random) {
+        int choice = random.nextInt(8);
+        if (choice == 0) {
+            Thread.yield();
+        } else if (choice == 1) {
+            LockSupport.parkNanos(random.nextInt(20_000));
+        } else if (choice == 2) {
+            for (int spin = random.nextInt(200); spin > 0; spin--) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Checks a recorded history against the pool invariants
+     */
+    private Result check(History[] histories, List<Integer> remaining, long elapsedNanos, int observedOverCapacity) {
+        Result result = new Result();
+        result.elapsedNanos = elapsedNanos;
+        result.observedOverCapacity = observedOverCapacity;
+        if (observedOverCapacity > 0) {
+            result.fail(observedOverCapacity + " sample(s) saw the pool above capacity");
+        }
+
+        Map<Integer, long[]> issued = new HashMap<>(); // ticket -> {add invoked, add responded}
+        Map<Integer, long[]> sold = new HashMap<>();
+        int operations = 0;
+        for (History history : histories) {
+            for (int i = 0; i < history.size; i++) {
+                operations++;
+                int ticket = history.tickets[i];
+                if (ticket == NONE) {
+                    continue;
+                }
+                long[] interval = {history.invoked[i], history.responded[i]};
+                if (history.types[i] == ADD) {
+                    if (issued.put(ticket, interval) != null) {
+                        result.fail("ticket #" + ticket + " was issued twice");
+                    }
+                } else if (sold.put(ticket, interval) != null) {
+                    result.fail("ticket #" + ticket + " was sold twice");
+                }
+            }
+        }
+        result.operations = operations;
+        result.issued = issued.size();
+        result.sold = sold.size();
+        result.remaining = remaining.size();
+
+        for (Map.Entry<Integer, long[]> sale : sold.entrySet()) {
+            long[] add = issued.get(sale.getKey());
+            if (add == null) {
+                result.fail("ticket #" + sale.getKey() + " was sold but never issued");
+            } else if (sale.getValue()[1] < add[0]) {
+                result.fail("ticket #" + sale.getKey() + " was sold before it was added");
+            }
+        }
+        for (Integer ticket : remaining) {
+            if (!issued.containsKey(ticket)) {
+                result.fail("ticket #" + ticket + " is in the pool but was never issued");
+            } else if (sold.containsKey(ticket)) {
+                result.fail("ticket #" + ticket + " was sold and is still in the pool");
+            }
+        }
+        if (issued.size() != sold.size() + remaining.size()) {
+            result.fail(String.format("%d ticket(s) lost: issued %d, sold %d, left in pool %d",
+                    issued.size() - sold.size() - remaining.size(), issued.size(), sold.size(),
+                    remaining.size()));
+        }
+
+        checkBounds(histories, result);
+        return result;
+    }
+
+    /**
+     * Builds the lower and upper bounds on the pool size over time from the
+     * recorded intervals and checks capacity and spurious empty/full results.
+     * A ticket is certainly in the pool from its add's response until its
+     * sale's invocation, and possibly in it from the add's invocation until
+     * the sale's response.
+     */
+    private void checkBounds(History[] histories, Result result) {
+        List<long[]> lower = new ArrayList<>(); // {time, delta}
+        List<long[]> upper = new ArrayList<>();
+        for (History history : histories) {
+            for (int i = 0; i < history.size; i++) {
+                if (history.tickets[i] == NONE) {
+                    continue;
+                }
+                if (history.types[i] == ADD) {
+                    lower.add(new long[] {history.responded[i], 1});
+                    upper.add(new long[] {history.invoked[i], 1});
+                } else {
+                    lower.add(new long[] {history.invoked[i], -1});
+                    upper.add(new long[] {history.responded[i], -1});
+                }
+            }
+        }
+        Timeline certain = new Timeline(lower, true);
+        Timeline possible = new Timeline(upper, false);
+
+        if (certain.max() > capacity) {
+            result.fail("the pool certainly held " + certain.max() + " tickets, above capacity " + capacity);
+        }
+        int spuriousEmpty = 0;
+        int spuriousFull = 0;
+        for (History history : histories) {
+            for (int i = 0; i < history.size; i++) {
+                if (history.tickets[i] != NONE) {
+                    continue;
+                }
+                if (history.types[i] == ADD) {
+                    if (possible.maxBetween(history.invoked[i], history.responded[i]) < capacity) {
+                        spuriousFull++;
+                    }
+                } else if (certain.minBetween(history.invoked[i], history.responded[i]) > 0) {
+                    spuriousEmpty++;
+                }
+            }
+        }
+        if (spuriousEmpty > 0) {
+            result.fail(spuriousEmpty + " sale(s) found the pool empty while it certainly held tickets");
+        }
+        if (spuriousFull > 0) {
+            result.fail(spuriousFull + " add(s) found the pool full while it certainly had room");
+        }
+    }
+
+    /**
+     * Per-thread operation log kept in primitive arrays so recording does
+     * not contend or allocate
+     */
+    private static final class History {
+        private final byte[] types;
+        private final int[] tickets;
+        private final long[] invoked;
+        private final long[] responded;
+        private int size;
+
+        private History(int capacity) {
+            types = new byte[capacity];
+            tickets = new int[capacity];
+            invoked = new long[capacity];
+            responded = new long[capacity];
+        }
+
+        private void record(byte type, int ticket, long invokedAt, long respondedAt) {
+            types[size] = type;
+            tickets[size] = ticket;
+            invoked[size] = invokedAt;
+            responded[size] = respondedAt;
+            size++;
+        }
+    }
+
+    /**
+     * Step function of the pool size over time with range min/max queries
+     * backed by sparse tables
+     */
+    private static final class Timeline {
+        private final long[] times;
+        private final long[][] mins;
+        private final long[][] maxs;
+
+        private Timeline(List<long[]> changes, boolean removalsFirst) {
+            // At equal times apply the change that keeps the bound conservative first
+            changes.sort((a, b) -> a[0] != b[0]
+                    ? Long.compare(a[0], b[0])
+                    : (removalsFirst ? Long.compare(a[1], b[1]) : Long.compare(b[1], a[1])));
+            int n = changes.size() + 1;
+            times = new long[n];
+            long[] values = new long[n];
+            times[0] = Long.MIN_VALUE;
+            for (int i = 1; i < n; i++) {
+                times[i] = changes.get(i - 1)[0];
+                values[i] = values[i - 1] + changes.get(i - 1)[1];
+            }
+            int levels = 32 - Integer.numberOfLeadingZeros(n);
+            mins = new long[levels][];
+            maxs = new long[levels][];
+            mins[0] = values;
+            maxs[0] = values;
+            for (int level = 1; level < levels; level++) {
+                int width = 1 << level;
+                mins[level] = new long[n - width + 1];
+                maxs[level] = new long[n - width + 1];
+                for (int i = 0; i + width <= n; i++) {
+                    mins[level][i] = Math.min(mins[level - 1][i], mins[level - 1][i + width / 2]);
+                    maxs[level][i] = Math.max(maxs[level - 1][i], maxs[level - 1][i + width / 2]);
+                }
+            }
+        }
+
+        private long max() {
+            return query(0, times.length - 1, false);
+        }
+
+        private long minBetween(long from, long to) {
+            return query(indexAt(from), indexAt(to), true);
+        }
+
+        private long maxBetween(long from, long to) {
+            return query(indexAt(from), indexAt(to), false);
+        }
+
+        /**
+         * Returns the index of the last change at or before the given time
+         */
+        private int indexAt(long time) {
+            int index = Arrays.binarySearch(times, time);
+            if (index < 0) {
+                return -index - 2;
+            }
+            while (index + 1 < times.length && times[index + 1] == time) {
+                index++;
+            }
+            return index;
+        }
+
+        private long query(int from, int to, boolean min) {
+            int level = 31 - Integer.numberOfLeadingZeros(to - from + 1);
+            long[][] table = min ? mins : maxs;
+            long a = table[level][from];
+            long b = table[level][to - (1 << level) + 1];
+            return min ? Math.min(a, b) : Math.max(a, b);
+        }
+    }
+
+    /**
+     * Outcome of one harness round
+     */
+    public static final class Result {
+        private final List<String> violations = new ArrayList<>();
+        private long elapsedNanos;
+        private int operations;
+        private int issued;
+        private int sold;
+        private int remaining;
+        private int observedOverCapacity;
+
+        private void fail(String violation) {
+            if (violations.size() < 20) {
+                violations.add(violation);
+            }
+        }
+
+        public boolean passed() {
+            return violations.isEmpty();
+        }
+
+        public List<String> getViolations() {
+            return violations;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = elapsedNanos / 1e9;
+            return String.format("%s: %d ops in %.3f s (%.0f ops/s, %.0f sales/s), issued %d, sold %d, left %d%s",
+                    passed() ? "PASS" : "FAIL", operations, seconds, operations / seconds, sold / seconds,
+                    issued, sold, remaining, passed() ? "" : "\n  " + String.join("\n  ", violations));
+        }
+    }
+
+    /**
+     * Runs the harness against the heap-based {@link TicketPool} with no
+     * purchase delay and no console output, or with "--pool shared" against
+     * a {@link SharedTicketPool} in a fresh temporary file each round
+     *
+     * @param args See the class description
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int threads = 2000;
+        int ops = 200;
+        int capacity = 500;
+        int rounds = 3;
+        long seed = 42;
+        boolean fair = false;
+        String poolType = "heap";
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--ops":
+                    ops = Integer.parseInt(args[++i]);
+                    break;
+                case "--capacity":
+                    capacity = Integer.parseInt(args[++i]);
+                    break;
+                case "--rounds":
+                    rounds = Integer.parseInt(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "--fair":
+                    fair = true;
+                    break;
+                case "--pool":
+                    poolType = args[++i];
+                    break;
+                default:
+                    System.out.println("Ignoring unknown argument: " + args[i]);
+            }
+        }
+
+        boolean fairLock = fair;
+        int slots = capacity;
+        Supplier<TicketInventory> factory;
+        if (poolType.equals("shared")) {
+            factory = () -> {
+                try {
+                    Path file = Files.createTempFile("ticket-pool", ".bin");
+                    file.toFile().deleteOnExit();
+                    return SharedTicketPool.open(file, slots);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+        } else {
+            factory = () -> {
+                TicketPool pool = new TicketPool(fairLock);
+                pool.setPurchaseDelay(0);
+                pool.setConsoleOutput(false);
+                return pool;
+            };
+        }
+
+        boolean allPassed = true;
+        for (int round = 0; round < rounds; round++) {
+            ConcurrencyStressHarness harness = new ConcurrencyStressHarness(threads, ops, capacity, seed + round);
+            Result result = harness.run(factory);
+            System.out.println("Round " + (round + 1) + " (seed " + (seed + round) + ") " + result);
+            allPassed &= result.passed();
+        }
+        System.exit(allPassed ? 0 : 1);
+    }
+}
@@ -1,17 +1,22 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
  * Manages the configuration settings for the ticketing system.
  * Stores and applies parameters such as ticket capacity, release rates,
  * and customer retrieval rates to the system components.
+ * Settings are held as immutable, versioned snapshots that can be replaced
+ * while the simulation is running; readers never take a lock.
  */
 public class Configuration {
-    private int totalTickets;
-    private int maxTicketCapacity;
-    private int ticketReleaseRate;
-    private int customerRetrievalRate;
+    private final AtomicReference<ConfigurationSnapshot> current = new AtomicReference<>();
+    private TicketPool ticketPool;
+    private boolean capacityFixed;
 
     /**
      * Sets up the configuration parameters for the ticketing system.
-     * 
+     *
      * @param totalTickets          Initial number of tickets in the system
      * @param maxTicketCapacity     Maximum allowed tickets in the pool
      * @param ticketReleaseRate     How often vendors release tickets (in ms)
@@ -19,23 +24,117 @@ public class Configuration {
      *                              ms)
      */
     public void configure(int totalTickets, int maxTicketCapacity, int ticketReleaseRate, int customerRetrievalRate) {
-        this.totalTickets = totalTickets;
-        this.maxTicketCapacity = maxTicketCapacity;
-        this.ticketReleaseRate = ticketReleaseRate;
-        this.customerRetrievalRate = customerRetrievalRate;
+        current.set(new ConfigurationSnapshot(nextVersion(), totalTickets, maxTicketCapacity, ticketReleaseRate,
+                customerRetrievalRate));
+    }
+
+    /**
+     * Sets up the configuration parameters from a .properties or .json file
+     *
+     * @param file The configuration file to read
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if a value is missing or invalid
+     */
+    public void configure(Path file) throws IOException {
+        ConfigurationSnapshot snapshot = ConfigurationSnapshot.load(file, current.get(), nextVersion());
+        if (snapshot.getTotalTickets() > snapshot.getMaxTicketCapacity()) {
+            throw new IllegalArgumentException(
+                    "Total tickets cannot exceed max capacity (" + snapshot.getMaxTicketCapacity() + ").");
+        }
+        current.set(snapshot);
+    }
+
+    /**
+     * Keeps later reconfigurations from changing the pool's capacity; they
+     * still update the rates. Used when the pool is one partition of a
+     * cluster, where capacity moves between nodes together with tickets and
+     * the configured capacity is only this node's starting share of the
+     * cluster's total, so resetting it would create or destroy capacity.
+     */
+    public synchronized void setCapacityFixed(boolean capacityFixed) {
+        this.capacityFixed = capacityFixed;
     }
 
     /**
      * Applies the stored configuration to the ticket pool and actors.
      * Sets up the ticket pool capacity and initial tickets,
      * and configures the timing for vendors and customers.
-     * 
+     *
      * @param ticketPool The ticket pool to configure
      */
-    public void applyConfiguration(TicketPool ticketPool) {
-        ticketPool.setMaxTicketCapacity(maxTicketCapacity);
-        ticketPool.addTickets(totalTickets);
-        Vendor.setTicketReleaseRate(ticketReleaseRate);
-        Customer.setCustomerRetrievalRate(customerRetrievalRate);
+    public synchronized void applyConfiguration(TicketPool ticketPool) {
+        this.ticketPool = ticketPool;
+        ConfigurationSnapshot snapshot = current.get();
+        ticketPool.setMaxTicketCapacity(snapshot.getMaxTicketCapacity());
+        applyRates(snapshot);
+        ticketPool.addTickets(snapshot.getTotalTickets());
+    }
+
+    /**
+     * Replaces the running configuration with values typed as "key=value"
+     * pairs. Capacity and rates take effect without stopping the simulation
+     * (capacity only if it is not fixed); the initial ticket count is only
+     * used at startup.
+     *
+     * @param text Comma or newline separated "key=value" pairs
+     * @return The snapshot that was published
+     */
+    public synchronized ConfigurationSnapshot reconfigure(String text) {
+        return publish(ConfigurationSnapshot.parse(text, current.get(), nextVersion()));
+    }
+
+    /**
+     * Replaces the running configuration with the contents of a file
+     *
+     * @param file The .properties or .json file to read
+     * @return The snapshot that was published
+     * @throws IOException if the file cannot be read
+     */
+    public synchronized ConfigurationSnapshot reload(Path file) throws IOException {
+        return publish(ConfigurationSnapshot.load(file, current.get(), nextVersion()));
+    }
+
+    /**
+     * Returns the snapshot currently in effect (null before configure)
+     */
+    public ConfigurationSnapshot getSnapshot() {
+        return current.get();
+    }
+
+    /**
+     * Publishes a new snapshot and pushes its live settings out to the pool
+     * and actors. Writers are serialized so snapshots are applied in version
+     * order. While capacity is fixed the published snapshot keeps the
+     * capacity already in effect, so it never reports a value that was not
+     * applied.
+     */
+    private ConfigurationSnapshot publish(ConfigurationSnapshot snapshot) {
+        ConfigurationSnapshot previous = current.get();
+        if (ticketPool != null && capacityFixed && previous != null
+                && previous.getMaxTicketCapacity() != snapshot.getMaxTicketCapacity()) {
+            OutputConsole.getInstance().printSystem("Capacity change ignored: capacity is managed by the cluster");
+            snapshot = new ConfigurationSnapshot(snapshot.getVersion(), snapshot.getTotalTickets(),
+                    previous.getMaxTicketCapacity(), snapshot.getTicketReleaseRate(),
+                    snapshot.getCustomerRetrievalRate());
+        }
+        current.set(snapshot);
+        if (ticketPool != null) {
+            if (!capacityFixed) {
+                ticketPool.setMaxTicketCapacity(snapshot.getMaxTicketCapacity());
+            }
+            applyRates(snapshot);
+            OutputConsole.getInstance().printSystem("Configuration reloaded: " + snapshot);
+        }
+        return snapshot;
+    }
+
+    private void applyRates(ConfigurationSnapshot snapshot) {
+        Vendor.setTicketReleaseRate(snapshot.getTicketReleaseRate());
+        Customer.setCustomerRetrievalRate(snapshot.getCustomerRetrievalRate());
+    }
+
+    private long nextVersion() {
+        ConfigurationSnapshot snapshot = current.get();
+        return snapshot == null ? 1 : snapshot.getVersion() + 1;
     }
 }
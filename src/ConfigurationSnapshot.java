@@ -0,0 +1,171 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable, versioned set of configuration values for the ticketing system.
+ * A new snapshot is created for every change and published as a whole, so
+ * readers always see a consistent combination of capacity and rates.
+ */
+public final class ConfigurationSnapshot {
+    private static final Set<String> KEYS = Set.of("totalTickets", "maxTicketCapacity", "ticketReleaseRate",
+            "customerRetrievalRate");
+    private static final Pattern JSON_OPEN = Pattern.compile("\\s*\\{\\s*");
+    private static final Pattern JSON_ENTRY = Pattern.compile("\"(\\w+)\"\\s*:\\s*(\"[^\"]*\"|[^,}\\s]*)\\s*([,}])\\s*");
+
+    private final long version;
+    private final int totalTickets;
+    private final int maxTicketCapacity;
+    private final int ticketReleaseRate;
+    private final int customerRetrievalRate;
+
+    /**
+     * Creates a snapshot with the given version and parameters
+     */
+    public ConfigurationSnapshot(long version, int totalTickets, int maxTicketCapacity, int ticketReleaseRate,
+            int customerRetrievalRate) {
+        if (totalTickets <= 0 || maxTicketCapacity <= 0 || ticketReleaseRate <= 0 || customerRetrievalRate <= 0) {
+            throw new IllegalArgumentException("Configuration values must be over 0.");
+        }
+        this.version = version;
+        this.totalTickets = totalTickets;
+        this.maxTicketCapacity = maxTicketCapacity;
+        this.ticketReleaseRate = ticketReleaseRate;
+        this.customerRetrievalRate = customerRetrievalRate;
+    }
+
+    /**
+     * Reads a snapshot from a .properties or .json file. Keys missing from the
+     * file keep the value from the base snapshot, if one is given. A JSON file
+     * must be one flat object of plain numbers.
+     *
+     * @param file    The file to read
+     * @param base    The snapshot to fall back to for missing keys (may be null)
+     * @param version The version to assign to the new snapshot
+     * @return The parsed snapshot
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file sets no known value or
+     *         holds an unknown key or a value that is not a number
+     */
+    public static ConfigurationSnapshot load(Path file, ConfigurationSnapshot base, long version) throws IOException {
+        Properties properties = new Properties();
+        if (file.getFileName().toString().toLowerCase().endsWith(".json")) {
+            readJson(Files.readString(file, StandardCharsets.UTF_8), properties);
+        } else {
+            try (InputStream in = Files.newInputStream(file)) {
+                properties.load(in);
+            }
+        }
+        return fromProperties(properties, base, version);
+    }
+
+    /**
+     * Parses a snapshot from "key=value" text, as typed into the reconfigure
+     * command. Keys missing from the text keep the value from the base snapshot.
+     */
+    public static ConfigurationSnapshot parse(String text, ConfigurationSnapshot base, long version) {
+        Properties properties = new Properties();
+        try {
+            properties.load(new StringReader(text.replace(',', '\n')));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unreadable configuration: " + text, e);
+        }
+        return fromProperties(properties, base, version);
+    }
+
+    /**
+     * Reads the entries of a flat JSON object into the properties. Values are
+     * kept as written (quotes included), so anything but a plain number is
+     * rejected when it is read.
+     */
+    private static void readJson(String json, Properties properties) {
+        Matcher open = JSON_OPEN.matcher(json);
+        if (!open.lookingAt()) {
+            throw new IllegalArgumentException("Configuration JSON must be an object.");
+        }
+        int position = open.end();
+        if (json.startsWith("}", position)) {
+            position++;
+        } else {
+            Matcher entry = JSON_ENTRY.matcher(json);
+            boolean closed = false;
+            while (!closed) {
+                entry.region(position, json.length());
+                if (!entry.lookingAt()) {
+                    throw new IllegalArgumentException("Configuration JSON must be a flat object of numbers.");
+                }
+                properties.setProperty(entry.group(1), entry.group(2));
+                closed = entry.group(3).equals("}");
+                position = entry.end();
+            }
+        }
+        if (!json.substring(position).isBlank()) {
+            throw new IllegalArgumentException("Unexpected content after the configuration JSON object.");
+        }
+    }
+
+    private static ConfigurationSnapshot fromProperties(Properties properties, ConfigurationSnapshot base,
+            long version) {
+        for (String key : properties.stringPropertyNames()) {
+            if (!KEYS.contains(key)) {
+                throw new IllegalArgumentException("Unknown configuration key: " + key);
+            }
+        }
+        if (properties.isEmpty()) {
+            throw new IllegalArgumentException("No configuration values found.");
+        }
+        return new ConfigurationSnapshot(version,
+                readInt(properties, "totalTickets", base == null ? -1 : base.totalTickets),
+                readInt(properties, "maxTicketCapacity", base == null ? -1 : base.maxTicketCapacity),
+                readInt(properties, "ticketReleaseRate", base == null ? -1 : base.ticketReleaseRate),
+                readInt(properties, "customerRetrievalRate", base == null ? -1 : base.customerRetrievalRate));
+    }
+
+    private static int readInt(Properties properties, String key, int fallback) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            if (fallback < 0) {
+                throw new IllegalArgumentException("Missing configuration value: " + key);
+            }
+            return fallback;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + key + ": " + value, e);
+        }
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getTotalTickets() {
+        return totalTickets;
+    }
+
+    public int getMaxTicketCapacity() {
+        return maxTicketCapacity;
+    }
+
+    public int getTicketReleaseRate() {
+        return ticketReleaseRate;
+    }
+
+    public int getCustomerRetrievalRate() {
+        return customerRetrievalRate;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("v%d [capacity=%d, initial=%d, release=%dms, retrieval=%dms]",
+                version, maxTicketCapacity, totalTickets, ticketReleaseRate, customerRetrievalRate);
+    }
+}
@@ -0,0 +1,64 @@
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * Watches a configuration file on disk and reloads the configuration
+ * whenever the file changes. Runs in its own thread until interrupted.
+ */
+public class ConfigurationWatcher implements Runnable {
+    private final Path file;
+    private final Configuration configuration;
+    private final OutputConsole console = OutputConsole.getInstance();
+
+    /**
+     * Creates a watcher for the given file and configuration
+     */
+    public ConfigurationWatcher(Path file, Configuration configuration) {
+        this.file = file.toAbsolutePath();
+        this.configuration = configuration;
+    }
+
+    /**
+     * Main watch loop. Reloads the configuration each time the file is
+     * created or modified; invalid files are reported and the current
+     * configuration is kept.
+     */
+    @Override
+    public void run() {
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (file.getFileName().equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                key.reset();
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            console.printSystem("Configuration watcher stopped: " + e.getMessage());
+        }
+    }
+
+    private void reload() {
+        try {
+            configuration.reload(file);
+        } catch (IOException | IllegalArgumentException e) {
+            console.printSystem("Configuration file rejected, keeping current settings: " + e.getMessage());
+        }
+    }
+}
@@ -1,24 +1,33 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Represents a regular customer that attempts to purchase tickets from the
  * pool.
  * Each customer runs in its own thread and tries to get tickets at a specified
- * rate until interrupted.
+ * rate until interrupted, passing through the waiting room before each attempt.
  */
 public class Customer implements Runnable {
-    private static int customerRetrievalRate;
+    private static final AtomicInteger nextBuyerId = new AtomicInteger();
+    private static volatile int customerRetrievalRate;
+    private final int buyerId;
     private final String name;
     private final TicketPool ticketPool;
+    private final WaitingRoom waitingRoom;
 
     /**
-     * Creates a new customer with a specific name and associated ticket pool
+     * Creates a new customer with a specific name, associated ticket pool and
+     * the waiting room that admits it to the pool
      */
-    public Customer(String name, TicketPool ticketPool) {
+    public Customer(String name, TicketPool ticketPool, WaitingRoom waitingRoom) {
+        this.buyerId = nextBuyerId.incrementAndGet();
         this.name = name;
         this.ticketPool = ticketPool;
+        this.waitingRoom = waitingRoom;
     }
 
     /**
-     * Sets how frequently customers attempt to get tickets (in milliseconds)
+     * Sets how frequently customers attempt to get tickets (in milliseconds).
+     * Running customers pick up the new rate on their next cycle.
      */
     public static void setCustomerRetrievalRate(int rate) {
         customerRetrievalRate = rate;
@@ -31,6 +40,13 @@ public class Customer implements Runnable {
         return name;
     }
 
+    /**
+     * Gets the unique id used to track this customer's purchases
+     */
+    protected int getBuyerId() {
+        return buyerId;
+    }
+
     /**
      * Gets the ticket pool this customer is associated with
      */
@@ -38,6 +54,13 @@ public class Customer implements Runnable {
         return ticketPool;
     }
 
+    /**
+     * Gets the waiting room this customer passes through
+     */
+    protected WaitingRoom getWaitingRoom() {
+        return waitingRoom;
+    }
+
     /**
      * Gets the current rate at which customers attempt to retrieve tickets
      */
@@ -48,17 +71,26 @@ public class Customer implements Runnable {
     /**
      * Main customer operation loop that continuously attempts to get tickets.
      * Runs until the thread is interrupted, with delays between attempts
-     * to purchase tickets.
+     * to purchase tickets measured on the pool's clock. Attempts that are
+     * rate limited or find nothing to sell skip the pool for that cycle.
      */
     @Override
     public void run() {
+        SimulationClock clock = ticketPool.getClock();
+        clock.register();
+        TicketingEvents.actorLifecycle(name, "Customer", "started");
         try {
             while (!Thread.currentThread().isInterrupted()) {
-                ticketPool.removeTicket(name);
-                Thread.sleep(customerRetrievalRate);
+                if (waitingRoom.admit(buyerId)) {
+                    ticketPool.removeTicket(buyerId, name);
+                }
+                clock.sleep(customerRetrievalRate);
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+        } finally {
+            clock.unregister();
+            TicketingEvents.actorLifecycle(name, "Customer", "stopped");
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,204 @@
+/**
+ * Records which buyers get tickets and how long they wait for the purchase
+ * lock. Statistics are kept per buyer in an open-addressing map keyed by the
+ * buyer's int id with parallel primitive arrays, so recording does not box
+ * or allocate once a buyer has been seen.
+ */
+public class FairnessTracker {
+    private static final int WAIT_BUCKETS = 24; // log2 microsecond buckets, the last covers 2^22 us (~4 s) and up
+    private static final int STARVATION_MIN_ATTEMPTS = 5;
+    private static final double STARVATION_SHARE = 0.1;
+
+    private int[] keys;
+    private String[] names;
+    private long[] attempts;
+    private long[] acquisitions;
+    private long[] totalWaitNanos;
+    private long[] maxWaitNanos;
+    private long[] waitHistogram;
+    private int size;
+
+    /**
+     * Creates an empty tracker
+     */
+    public FairnessTracker() {
+        allocate(64);
+    }
+
+    /**
+     * Records one purchase attempt for a buyer
+     *
+     * @param buyerId   Unique id of the buyer (must be over 0)
+     * @param name      Display name of the buyer
+     * @param waitNanos Time spent waiting for the purchase lock
+     * @param acquired  Whether the attempt ended with a ticket
+     * @throws IllegalArgumentException if the buyer id is not over 0
+     */
+    public synchronized void recordAttempt(int buyerId, String name, long waitNanos, boolean acquired) {
+        checkBuyerId(buyerId);
+        int slot = slotFor(buyerId, name);
+        attempts[slot]++;
+        if (acquired) {
+            acquisitions[slot]++;
+        }
+        totalWaitNanos[slot] += waitNanos;
+        if (waitNanos > maxWaitNanos[slot]) {
+            maxWaitNanos[slot] = waitNanos;
+        }
+        waitHistogram[slot * WAIT_BUCKETS + bucketFor(waitNanos)]++;
+    }
+
+    /**
+     * Clears all recorded statistics
+     */
+    public synchronized void reset() {
+        allocate(64);
+    }
+
+    /**
+     * Builds a fairness report containing per-buyer acquisitions and wait
+     * times, Jain's fairness index, the max/min acquisition ratio and any
+     * buyers that look starved.
+     *
+     * @param lockMode Description of the purchase lock mode in use
+     * @return The formatted report
+     */
+    public synchronized String report(String lockMode) {
+        StringBuilder report = new StringBuilder();
+        report.append("Lock mode: ").append(lockMode).append('\n');
+        if (size == 0) {
+            return report.append("No purchase attempts recorded yet.\n").toString();
+        }
+
+        long totalAcquired = 0;
+        double sumSquares = 0;
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        report.append(String.format("%-14s %9s %9s %8s %12s %12s %12s%n",
+                "Buyer", "Attempts", "Acquired", "Success", "Mean wait", "p99 wait", "Max wait"));
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] == 0) {
+                continue;
+            }
+            long acquired = acquisitions[slot];
+            totalAcquired += acquired;
+            sumSquares += (double) acquired * acquired;
+            min = Math.min(min, acquired);
+            max = Math.max(max, acquired);
+            report.append(String.format("%-14s %9d %9d %7.1f%% %10.2fms %10.2fms %10.2fms%n",
+                    names[slot], attempts[slot], acquired, 100.0 * acquired / attempts[slot],
+                    totalWaitNanos[slot] / 1e6 / attempts[slot], percentileMillis(slot, 0.99),
+                    maxWaitNanos[slot] / 1e6));
+        }
+
+        double jain = sumSquares == 0 ? 1.0 : (double) totalAcquired * totalAcquired / (size * sumSquares);
+        report.append(String.format("Jain's fairness index: %.3f (1.000 = perfectly fair)%n", jain));
+        report.append("Max/min acquisition ratio: ")
+                .append(min == 0 ? (max == 0 ? "n/a" : "infinite") : String.format("%.2f", (double) max / min))
+                .append('\n');
+
+        double mean = (double) totalAcquired / size;
+        StringBuilder starved = new StringBuilder();
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != 0 && attempts[slot] >= STARVATION_MIN_ATTEMPTS
+                    && acquisitions[slot] < mean * STARVATION_SHARE) {
+                starved.append(starved.length() == 0 ? "" : ", ").append(names[slot]);
+            }
+        }
+        report.append("Starved buyers: ").append(starved.length() == 0 ? "none" : starved).append('\n');
+        return report.toString();
+    }
+
+    /**
+     * Rejects buyer ids the tracker cannot store; 0 marks an empty slot
+     *
+     * @throws IllegalArgumentException if the buyer id is not over 0
+     */
+    static void checkBuyerId(int buyerId) {
+        if (buyerId <= 0) {
+            throw new IllegalArgumentException("Buyer id must be over 0.");
+        }
+    }
+
+    /**
+     * Finds the slot for a buyer, inserting it if this is its first attempt
+     */
+    private int slotFor(int buyerId, String name) {
+        int mask = keys.length - 1;
+        int slot = mix(buyerId) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == buyerId) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+            return slotFor(buyerId, name);
+        }
+        keys[slot] = buyerId;
+        names[slot] = name;
+        size++;
+        return slot;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        String[] oldNames = names;
+        long[] oldAttempts = attempts;
+        long[] oldAcquisitions = acquisitions;
+        long[] oldTotalWait = totalWaitNanos;
+        long[] oldMaxWait = maxWaitNanos;
+        long[] oldHistogram = waitHistogram;
+        allocate(oldKeys.length * 2);
+        for (int old = 0; old < oldKeys.length; old++) {
+            if (oldKeys[old] == 0) {
+                continue;
+            }
+            int slot = slotFor(oldKeys[old], oldNames[old]);
+            attempts[slot] = oldAttempts[old];
+            acquisitions[slot] = oldAcquisitions[old];
+            totalWaitNanos[slot] = oldTotalWait[old];
+            maxWaitNanos[slot] = oldMaxWait[old];
+            System.arraycopy(oldHistogram, old * WAIT_BUCKETS, waitHistogram, slot * WAIT_BUCKETS, WAIT_BUCKETS);
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        names = new String[capacity];
+        attempts = new long[capacity];
+        acquisitions = new long[capacity];
+        totalWaitNanos = new long[capacity];
+        maxWaitNanos = new long[capacity];
+        waitHistogram = new long[capacity * WAIT_BUCKETS];
+        size = 0;
+    }
+
+    /**
+     * Returns the upper bound of the histogram bucket holding the given
+     * percentile of a buyer's waits, in milliseconds
+     */
+    private double percentileMillis(int slot, double percentile) {
+        long target = (long) Math.ceil(attempts[slot] * percentile);
+        long seen = 0;
+        int offset = slot * WAIT_BUCKETS;
+        for (int bucket = 0; bucket < WAIT_BUCKETS; bucket++) {
+            seen += waitHistogram[offset + bucket];
+            if (seen >= target && bucket < WAIT_BUCKETS - 1) {
+                return (1L << bucket) / 1000.0;
+            }
+        }
+        return maxWaitNanos[slot] / 1e6;
+    }
+
+    private static int bucketFor(long waitNanos) {
+        long micros = waitNanos / 1000;
+        return Math.min(WAIT_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
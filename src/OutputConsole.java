@@ -4,34 +4,56 @@ import javax.swing.text.Style;
 import javax.swing.text.StyleConstants;
 import javax.swing.text.StyledDocument;
 import java.awt.*;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Provides a graphical console window for displaying simulation output.
  * Uses different colors for different types of messages (vendor, customer, VIP,
  * system)
  * and implements the Singleton pattern for system-wide access.
+ * Messages are queued and written to the window in batches, so a burst of
+ * output costs one task on the event dispatch thread instead of one per line.
+ * The window is only built when {@link #open()} is called, so startup does
+ * not wait for AWT; messages printed before then are shown once it opens.
  */
-public class OutputConsole extends JFrame {
-    private final JTextPane textPane;
+public class OutputConsole {
     private static OutputConsole instance;
+    private JFrame frame;
+    private JTextPane textPane;
 
-    private static final Color VENDOR_COLOR = new Color(46, 204, 113); // Green
-    private static final Color CUSTOMER_COLOR = new Color(52, 152, 219); // Blue
-    private static final Color VIP_COLOR = new Color(154, 85, 184); // Purple
-    private static final Color SYSTEM_COLOR = new Color(149, 165, 166); // Gray
+    private static final int VENDOR = 0;
+    private static final int CUSTOMER = 1;
+    private static final int VIP = 2;
+    private static final int SYSTEM = 3;
+    private static final int CLEAR = -1;
 
-    private final DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+    private DateTimeFormatter timeFormatter;
+    private volatile SimulationClock clock = SystemClock.getInstance();
+    private final ConcurrentLinkedQueue<PendingMessage> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicBoolean opened = new AtomicBoolean();
 
     /**
      * Private constructor for Singleton pattern.
-     * Sets up the GUI window with a styled text pane for output.
+     * Creates no window; see {@link #open()}.
      */
     private OutputConsole() {
-        setTitle("Simulation Output");
-        setSize(800, 600);
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+    }
+
+    /**
+     * Builds the GUI window with a styled text pane for output.
+     * Runs on the event dispatch thread.
+     */
+    private void createWindow() {
+        timeFormatter = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+        frame = new JFrame("Simulation Output");
+        frame.setSize(800, 600);
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
         textPane = new JTextPane();
         textPane.setEditable(false);
@@ -41,74 +63,180 @@ public class OutputConsole extends JFrame {
         JScrollPane scrollPane = new JScrollPane(textPane);
         scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_ALWAYS);
 
-        add(scrollPane);
-        setLocationRelativeTo(null);
+        frame.add(scrollPane);
+        frame.setLocationRelativeTo(null);
+    }
+
+    /**
+     * Builds and shows the console window on the event dispatch thread,
+     * followed by any messages queued so far. Returns without waiting for
+     * the window; calling it again has no effect.
+     */
+    public synchronized void open() {
+        if (!opened.get()) {
+            flushScheduled.set(true); // before opening, so no flush can run ahead of the window
+            opened.set(true);
+            SwingUtilities.invokeLater(() -> {
+                createWindow();
+                frame.setVisible(true);
+                flush();
+            });
+        }
+    }
+
+    /**
+     * Closes the console window if it was opened
+     */
+    public void close() {
+        if (opened.get()) {
+            SwingUtilities.invokeLater(() -> {
+                if (frame != null) {
+                    frame.dispose();
+                }
+            });
+        }
     }
 
     /**
      * Returns the single instance of the output console.
      * Creates the instance if it doesn't exist (Singleton pattern).
      */
-    public static OutputConsole getInstance() {
+    public static synchronized OutputConsole getInstance() {
         if (instance == null) {
             instance = new OutputConsole();
         }
         return instance;
     }
 
+    /**
+     * Sets the clock used to timestamp messages, so a virtual-clock
+     * simulation shows simulated time
+     */
+    public void setClock(SimulationClock clock) {
+        this.clock = clock;
+    }
+
     /**
      * Prints a vendor message in specified color
      */
     public void printVendor(String message) {
-        printColored(message, VENDOR_COLOR);
+        printColored(message, VENDOR);
     }
 
     /**
      * Prints a customer message in specified color
      */
     public void printCustomer(String message) {
-        printColored(message, CUSTOMER_COLOR);
+        printColored(message, CUSTOMER);
     }
 
     /**
      * Prints a VIP customer message in specified color
      */
     public void printVIP(String message) {
-        printColored(message, VIP_COLOR);
+        printColored(message, VIP);
     }
 
     /**
      * Prints a system message in specified color
      */
     public void printSystem(String message) {
-        printColored(message, SYSTEM_COLOR);
+        printColored(message, SYSTEM);
     }
 
     /**
      * Helper method to print colored messages with timestamps.
+     * The message is timestamped now and queued for the next batch flush;
+     * formatting and coloring happen on the event dispatch thread.
      */
-    private void printColored(String message, Color color) {
-        SwingUtilities.invokeLater(() -> {
-            StyledDocument doc = textPane.getStyledDocument();
-            Style style = textPane.addStyle("Color Style", null);
-            StyleConstants.setForeground(style, color);
+    private void printColored(String message, int kind) {
+        enqueue(new PendingMessage(clock.currentTimeMillis(), message, kind));
+    }
 
-            try {
-                String timestamp = LocalDateTime.now().format(timeFormatter);
-                String timestampedMessage = String.format("[%s] %s", timestamp, message);
+    /**
+     * Clears all text from the console window
+     */
+    public void clear() {
+        enqueue(new PendingMessage(0, null, CLEAR));
+    }
+
+    /**
+     * Queues a message and, once the window is open, schedules a flush on
+     * the event dispatch thread unless one is already pending
+     */
+    private void enqueue(PendingMessage message) {
+        pending.add(message);
+        if (opened.get() && flushScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::flush);
+        }
+    }
 
-                doc.insertString(doc.getLength(), timestampedMessage + "\n", style);
-                textPane.setCaretPosition(doc.getLength());
+    /**
+     * Writes every queued message to the text pane in one pass.
+     * Runs on the event dispatch thread.
+     */
+    private void flush() {
+        flushScheduled.set(false);
+        TicketingEvents.ConsoleFlush event = null;
+        if (TicketingEvents.isActive()) {
+            event = new TicketingEvents.ConsoleFlush();
+            event.begin();
+        }
+        StyledDocument doc = textPane.getStyledDocument();
+        int written = 0;
+        PendingMessage message;
+        while ((message = pending.poll()) != null) {
+            if (message.kind == CLEAR) {
+                textPane.setText("");
+                continue;
+            }
+            Style style = textPane.addStyle("Color Style", null);
+            StyleConstants.setForeground(style, Palette.COLORS[message.kind]);
+            LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(message.timeMillis),
+                    ZoneId.systemDefault());
+            try {
+                doc.insertString(doc.getLength(),
+                        String.format("[%s] %s\n", time.format(timeFormatter), message.text), style);
+                written++;
             } catch (BadLocationException e) {
                 e.printStackTrace();
             }
-        });
+        }
+        textPane.setCaretPosition(doc.getLength());
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.messages = written;
+                event.commit();
+            }
+        }
     }
 
     /**
-     * Clears all text from the console window
+     * A queued console line; the CLEAR kind clears the console
      */
-    public void clear() {
-        SwingUtilities.invokeLater(() -> textPane.setText(""));
+    private static final class PendingMessage {
+        private final long timeMillis;
+        private final String text;
+        private final int kind;
+
+        private PendingMessage(long timeMillis, String text, int kind) {
+            this.timeMillis = timeMillis;
+            this.text = text;
+            this.kind = kind;
+        }
+    }
+
+    /**
+     * Message colors by kind. Kept in their own class so AWT is not loaded
+     * until the first flush.
+     */
+    private static final class Palette {
+        private static final Color[] COLORS = {
+                new Color(46, 204, 113), // Green: vendor
+                new Color(52, 152, 219), // Blue: customer
+                new Color(154, 85, 184), // Purple: VIP
+                new Color(149, 165, 166) // Gray: system
+        };
     }
 }
\ No newline at end of file
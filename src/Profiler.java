@@ -0,0 +1,89 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+
+/**
+ * Controls a Java Flight Recorder recording of the running simulation.
+ * Uses the JDK's "profile" settings plus the ticketing events, and writes
+ * recordings to timestamped .jfr files in the working directory for offline
+ * analysis (e.g. with JDK Mission Control or "jfr print").
+ */
+public class Profiler {
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private Recording recording;
+
+    /**
+     * Starts a new recording if none is running
+     *
+     * @return true if a recording was started, false if one was already running
+     * @throws IOException    if the recording settings cannot be read
+     * @throws ParseException if the recording settings are invalid
+     */
+    public synchronized boolean start() throws IOException, ParseException {
+        if (!FlightRecorder.isAvailable()) {
+            throw new IOException("Flight Recorder is not available in this JVM");
+        }
+        if (recording != null) {
+            return false;
+        }
+        recording = new Recording(jdk.jfr.Configuration.getConfiguration("profile"));
+        recording.setName("ticketing");
+        recording.setToDisk(true);
+        recording.start();
+        return true;
+    }
+
+    /**
+     * Writes what has been recorded so far to a file and keeps recording
+     *
+     * @return The file written
+     * @throws IOException if there is no recording or the file cannot be written
+     */
+    public synchronized Path dump() throws IOException {
+        if (recording == null) {
+            throw new IOException("No recording is running");
+        }
+        Path file = newFile();
+        recording.dump(file);
+        return file;
+    }
+
+    /**
+     * Stops the recording and writes it to a file
+     *
+     * @return The file written
+     * @throws IOException if there is no recording or the file cannot be written
+     */
+    public synchronized Path stop() throws IOException {
+        if (recording == null) {
+            throw new IOException("No recording is running");
+        }
+        try {
+            recording.stop();
+            Path file = newFile();
+            recording.dump(file);
+            return file;
+        } finally {
+            recording.close();
+            recording = null;
+        }
+    }
+
+    /**
+     * Returns true while a recording is running
+     */
+    public synchronized boolean isRecording() {
+        return recording != null;
+    }
+
+    private static Path newFile() {
+        return Paths.get("ticketing-" + LocalDateTime.now().format(FILE_TIME) + ".jfr").toAbsolutePath();
+    }
+}
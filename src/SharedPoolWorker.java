@@ -0,0 +1,162 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Headless worker process that sells from a {@link SharedTicketPool}.
+ * Start several workers on the same file to share one inventory between
+ * JVMs; each runs its own vendors and customers and prints the shared totals
+ * once a second. If a worker crashes, the tickets in the pool are kept, and
+ * the running workers return the tickets it was in the middle of selling
+ * within a second. Run one worker with --recover once no other worker is
+ * running to also fix any counts a crash left behind; recovery refuses to
+ * run while another worker has the pool open.
+ *
+ * Usage: java SharedPoolWorker --file F [--slots N] [--capacity N]
+ * [--vendors N] [--customers N] [--vips N] [--release-rate MS]
+ * [--retrieval-rate MS] [--purchase-delay MS] [--seconds N] [--recover]
+ */
+public class SharedPoolWorker {
+
+    /**
+     * Opens the shared pool and runs vendor and customer threads against it
+     *
+     * @param args See the class description
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path file = null;
+        int slots = 1000;
+        int capacity = -1;
+        int vendors = 2;
+        int customers = 4;
+        int vips = 1;
+        int releaseRate = 10;
+        int retrievalRate = 10;
+        int purchaseDelay = 0;
+        int seconds = 0;
+        boolean recover = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--file":
+                    file = Paths.get(args[++i]);
+                    break;
+                case "--slots":
+                    slots = Integer.parseInt(args[++i]);
+                    break;
+                case "--capacity":
+                    capacity = Integer.parseInt(args[++i]);
+                    break;
+                case "--vendors":
+                    vendors = Integer.parseInt(args[++i]);
+                    break;
+                case "--customers":
+                    customers = Integer.parseInt(args[++i]);
+                    break;
+                case "--vips":
+                    vips = Integer.parseInt(args[++i]);
+                    break;
+                case "--release-rate":
+                    releaseRate = Integer.parseInt(args[++i]);
+                    break;
+                case "--retrieval-rate":
+                    retrievalRate = Integer.parseInt(args[++i]);
+                    break;
+                case "--purchase-delay":
+                    purchaseDelay = Integer.parseInt(args[++i]);
+                    break;
+                case "--seconds":
+                    seconds = Integer.parseInt(args[++i]);
+                    break;
+                case "--recover":
+                    recover = true;
+                    break;
+                default:
+                    System.out.println("Ignoring unknown argument: " + args[i]);
+            }
+        }
+        if (file == null) {
+            System.out.println("A pool file is required: --file <path>");
+            System.exit(2);
+        }
+
+        try (SharedTicketPool pool = SharedTicketPool.open(file, slots)) {
+            if (recover) {
+                try {
+                    System.out.println("Recovered shared pool: " + pool.recover() + " tickets in " + file);
+                } catch (IllegalStateException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(2);
+                }
+            }
+            if (capacity >= 0) {
+                pool.setMaxTicketCapacity(capacity);
+            }
+            pool.setPurchaseDelay(purchaseDelay);
+            long pid = ProcessHandle.current().pid();
+            AtomicLong localAdded = new AtomicLong();
+            AtomicLong localSold = new AtomicLong();
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < vendors; i++) {
+                String name = "Vendor-" + pid + "-" + (i + 1);
+                threads.add(actor(name, releaseRate, () -> {
+                    if (pool.addTicket(name) != null) {
+                        localAdded.incrementAndGet();
+                    }
+                }));
+            }
+            for (int i = 0; i < customers + vips; i++) {
+                boolean vip = i >= customers;
+                int buyerId = i + 1;
+                String name = (vip ? "VIP-" : "Customer-") + pid + "-" + buyerId;
+                threads.add(actor(name, retrievalRate, () -> {
+                    Integer ticket = vip ? pool.removeVIPTicket(buyerId, name) : pool.removeTicket(buyerId, name);
+                    if (ticket != null) {
+                        localSold.incrementAndGet();
+                    }
+                }));
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> threads.forEach(Thread::interrupt)));
+            threads.forEach(Thread::start);
+
+            System.out.println("Worker " + pid + " sharing " + file + " (" + pool.getSlotCount() + " slots)");
+            long deadline = seconds > 0 ? System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds) : Long.MAX_VALUE;
+            while (System.nanoTime() < deadline) {
+                Thread.sleep(1000);
+                int returned = pool.reclaimAbandoned();
+                if (returned > 0) {
+                    System.out.println("Returned " + returned + " ticket(s) left claimed by a crashed worker");
+                }
+                System.out.printf("Pool: %d/%d tickets, %d added, %d sold | this worker: %d added, %d sold%n",
+                        pool.getTicketCount(), pool.getMaxTicketCapacity(), pool.getTicketsAdded(),
+                        pool.getTicketsSold(), localAdded.get(), localSold.get());
+            }
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+    }
+
+    /**
+     * Creates a thread that repeats an action with a pause between runs
+     * until interrupted
+     */
+    private static Thread actor(String name, int pauseMillis, Runnable action) {
+        return new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    action.run();
+                    Thread.sleep(pauseMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, name);
+    }
+}
@@ -0,0 +1,398 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ticket pool kept off the Java heap in a memory-mapped file, so several
+ * worker JVMs on the same machine can sell from one inventory and the
+ * inventory adds nothing to garbage collection.
+ *
+ * The file holds a header of counters followed by a ring of slots. A slot is
+ * empty (0), holds a ticket number, or holds a ticket claimed by a sale in
+ * progress, tagged with the process id of the worker selling it. Every move
+ * between these states is a single atomic compare-and-set: a sale claims the
+ * ticket, waits out the purchase delay and then frees the slot, which is
+ * the moment the ticket is sold. A worker that crashes at any point cannot
+ * sell a ticket twice, and a ticket it had claimed but not sold stays in its
+ * slot until {@link #reclaimAbandoned()}, run by any live worker, sees that
+ * its owner is gone and returns it. The head and tail indices are where
+ * the next sale and the next add start looking, which keeps sales in roughly
+ * first-in-first-out order.
+ *
+ * The count of tickets is reserved before a ticket is placed and released
+ * after one is sold, so it is never lower than the number of tickets in the
+ * slots and the pool can never go over capacity. A claim keeps its
+ * reservation, so returning it restores the capacity as well. Only a crash
+ * between two back-to-back counter and slot updates can leave the counters
+ * slightly off; {@link #recover()} fixes them from the slots.
+ *
+ * Every open pool holds a shared lock on the file, and recover() needs the
+ * only one, so it cannot run while another worker is using the pool. A
+ * process may have a given pool file open only once.
+ */
+public class SharedTicketPool implements TicketInventory, AutoCloseable {
+    private static final long MAGIC = 0x5449434b45545331L; // "TICKETS1"
+    private static final int MAGIC_INDEX = 0;
+    private static final int SLOTS_INDEX = 1;
+    private static final int CAPACITY_INDEX = 2;
+    private static final int NEXT_ID_INDEX = 3;
+    private static final int HEAD_INDEX = 4;
+    private static final int TAIL_INDEX = 5;
+    private static final int COUNT_INDEX = 6;
+    private static final int SOLD_INDEX = 7;
+    private static final int ADDED_INDEX = 8;
+    private static final int HEADER_LONGS = 16;
+    private static final long EMPTY = 0;
+    private static final long CLAIMED = Long.MIN_VALUE; // flag bit; owner pid above the ticket's low 32 bits
+    private static final long TICKET_MASK = 0xFFFFFFFFL;
+    private static final long SETUP_LOCK_POSITION = Long.MAX_VALUE - 2;
+    private static final long OPEN_LOCK_POSITION = Long.MAX_VALUE - 1;
+    private static final int MAX_EMPTY_RESCANS = 8;
+
+    private static final VarHandle LONGS =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int slots;
+    private final long owner = ProcessHandle.current().pid();
+    private FileLock openLock;
+    private volatile int purchaseDelay;
+
+    private SharedTicketPool(FileChannel channel, MappedByteBuffer buffer, int slots, FileLock openLock) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.slots = slots;
+        this.openLock = openLock;
+    }
+
+    /**
+     * Opens the shared pool in the given file, creating it with the given
+     * number of slots if it does not exist yet. Every worker opening an
+     * existing file shares the slot count it was created with.
+     *
+     * @param file  The file backing the pool
+     * @param slots The most tickets the pool can ever hold, used only when
+     *              the file is created
+     * @throws IOException if the file cannot be opened or is not a ticket pool
+     * @throws java.nio.channels.OverlappingFileLockException if this process
+     *         already has the file open
+     */
+    public static SharedTicketPool open(Path file, int slots) throws IOException {
+        if (slots <= 0 || bytesFor(slots) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Slot count must be between 1 and "
+                    + (Integer.MAX_VALUE / Long.BYTES - HEADER_LONGS) + ".");
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        FileLock setupLock = null;
+        try {
+            setupLock = channel.lock(SETUP_LOCK_POSITION, 1, false);
+            if (channel.size() == 0) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytesFor(slots));
+                LONGS.setVolatile(buffer, offset(SLOTS_INDEX), (long) slots);
+                LONGS.setVolatile(buffer, offset(CAPACITY_INDEX), (long) slots);
+                LONGS.setVolatile(buffer, offset(NEXT_ID_INDEX), 1L);
+                LONGS.setVolatile(buffer, offset(MAGIC_INDEX), MAGIC);
+                buffer.force();
+                return new SharedTicketPool(channel, buffer, slots, channel.lock(OPEN_LOCK_POSITION, 1, true));
+            }
+            if (channel.size() < bytesFor(0)) {
+                throw new IOException(file + " is not a shared ticket pool");
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, bytesFor(0));
+            long magic = (long) LONGS.getVolatile(header, offset(MAGIC_INDEX));
+            long existingSlots = (long) LONGS.getVolatile(header, offset(SLOTS_INDEX));
+            if (magic != MAGIC || existingSlots <= 0 || channel.size() < bytesFor((int) existingSlots)) {
+                throw new IOException(file + " is not a shared ticket pool");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    bytesFor((int) existingSlots));
+            return new SharedTicketPool(channel, buffer, (int) existingSlots,
+                    channel.lock(OPEN_LOCK_POSITION, 1, true));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        } finally {
+            if (setupLock != null && setupLock.isValid()) {
+                setupLock.release();
+            }
+        }
+    }
+
+    /**
+     * Sets how long a regular customer's purchase takes before the ticket is
+     * taken (in milliseconds). Defaults to 0; VIP purchases never wait.
+     */
+    public void setPurchaseDelay(int millis) {
+        this.purchaseDelay = millis;
+    }
+
+    /**
+     * Adds one new ticket on behalf of a vendor
+     * Returns the ticket number, or null if the pool is full
+     */
+    @Override
+    public Integer addTicket(String vendorName) {
+        if (!reserve()) {
+            return null;
+        }
+        long id = (long) LONGS.getAndAdd(buffer, offset(NEXT_ID_INDEX), 1L);
+        long start = (long) LONGS.getAndAdd(buffer, offset(TAIL_INDEX), 1L);
+        // A reservation guarantees a free slot, though others may take it first
+        for (long probe = start; ; probe++) {
+            int slot = slotOffset(probe);
+            if ((long) LONGS.getVolatile(buffer, slot) == EMPTY
+                    && LONGS.compareAndSet(buffer, slot, EMPTY, id)) {
+                LONGS.getAndAdd(buffer, offset(ADDED_INDEX), 1L);
+                return (int) id;
+            }
+            if (probe - start >= slots) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Sells a ticket to a regular customer, holding it for the purchase
+     * delay before the sale completes
+     * Returns null if no tickets are available
+     */
+    @Override
+    public Integer removeTicket(int buyerId, String customerName) {
+        return take(purchaseDelay);
+    }
+
+    /**
+     * Sells a ticket to a VIP customer without the purchase delay
+     * Returns null if no tickets are available
+     */
+    @Override
+    public Integer removeVIPTicket(int buyerId, String customerName) {
+        return take(0);
+    }
+
+    /**
+     * Returns the number of tickets in the pool. May briefly include tickets
+     * being added or sold by another worker.
+     */
+    @Override
+    public int getTicketCount() {
+        return (int) Math.min(slots, (long) LONGS.getVolatile(buffer, offset(COUNT_INDEX)));
+    }
+
+    /**
+     * Returns the maximum number of tickets the pool can currently hold
+     */
+    @Override
+    public int getMaxTicketCapacity() {
+        return (int) (long) LONGS.getVolatile(buffer, offset(CAPACITY_INDEX));
+    }
+
+    /**
+     * Updates the maximum number of tickets the pool can hold for every
+     * worker. It cannot exceed the slot count the file was created with; if
+     * it is below the current count, adds wait until sales drain the pool.
+     */
+    @Override
+    public void setMaxTicketCapacity(int maxTicketCapacity) {
+        if (maxTicketCapacity < 0 || maxTicketCapacity > slots) {
+            throw new IllegalArgumentException("Capacity must be between 0 and " + slots + ".");
+        }
+        LONGS.setVolatile(buffer, offset(CAPACITY_INDEX), (long) maxTicketCapacity);
+    }
+
+    /**
+     * Returns the number of slots the pool was created with
+     */
+    public int getSlotCount() {
+        return slots;
+    }
+
+    /**
+     * Returns the total number of tickets sold by all workers
+     */
+    public long getTicketsSold() {
+        return (long) LONGS.getVolatile(buffer, offset(SOLD_INDEX));
+    }
+
+    /**
+     * Returns the total number of tickets added by all workers
+     */
+    public long getTicketsAdded() {
+        return (long) LONGS.getVolatile(buffer, offset(ADDED_INDEX));
+    }
+
+    /**
+     * Returns tickets claimed by workers that have died to their slots, while
+     * other workers keep selling. A claim whose process id has since been
+     * reused by a live process stays until {@link #recover()}.
+     *
+     * @return The number of tickets returned
+     */
+    public int reclaimAbandoned() {
+        Map<Long, Boolean> alive = new HashMap<>();
+        alive.put(owner, true);
+        int returned = 0;
+        for (int i = 0; i < slots; i++) {
+            int slot = slotOffset(i);
+            long state = (long) LONGS.getVolatile(buffer, slot);
+            if ((state & CLAIMED) == 0 || alive.computeIfAbsent(ownerOf(state), SharedTicketPool::isAlive)) {
+                continue;
+            }
+            // Only the owner frees a claim, so a dead owner's claim only changes here
+            if (LONGS.compareAndSet(buffer, slot, state, state & TICKET_MASK)) {
+                returned++;
+            }
+        }
+        return returned;
+    }
+
+    /**
+     * Repairs the pool after workers crashed. Returns every claimed ticket
+     * to its slot (with no other process using the file, a claim can only
+     * have been left by a dead one, even one whose process id this process
+     * now has), recounts the tickets in the slots and corrects the ticket
+     * count and the added and sold totals to match. Call it before this
+     * worker starts adding or selling.
+     *
+     * @return The number of tickets found in the pool
+     * @throws IOException if the file lock cannot be taken
+     * @throws IllegalStateException if another worker has the pool open
+     */
+    public synchronized int recover() throws IOException {
+        openLock.release();
+        FileLock exclusive = channel.tryLock(OPEN_LOCK_POSITION, 1, false);
+        try {
+            if (exclusive == null) {
+                throw new IllegalStateException("Cannot recover while another worker has the pool open.");
+            }
+            int found = 0;
+            for (int i = 0; i < slots; i++) {
+                int slot = slotOffset(i);
+                long state = (long) LONGS.getVolatile(buffer, slot);
+                if ((state & CLAIMED) != 0) {
+                    LONGS.setVolatile(buffer, slot, state & TICKET_MASK);
+                    state &= TICKET_MASK;
+                }
+                if (state != EMPTY) {
+                    found++;
+                }
+            }
+            long added = (long) LONGS.getVolatile(buffer, offset(ADDED_INDEX));
+            long sold = (long) LONGS.getVolatile(buffer, offset(SOLD_INDEX));
+            long missing = found - (added - sold);
+            if (missing > 0) {
+                LONGS.setVolatile(buffer, offset(ADDED_INDEX), added + missing); // placed before being counted
+            } else {
+                LONGS.setVolatile(buffer, offset(SOLD_INDEX), sold - missing); // sold before being counted
+            }
+            LONGS.setVolatile(buffer, offset(COUNT_INDEX), (long) found);
+            buffer.force();
+            return found;
+        } finally {
+            if (exclusive != null) {
+                exclusive.release();
+            }
+            openLock = channel.lock(OPEN_LOCK_POSITION, 1, true);
+        }
+    }
+
+    /**
+     * Writes the pool to disk and releases this worker's handle on the file
+     * and its lock
+     */
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    /**
+     * Reserves room for one ticket, failing if the pool is at capacity
+     */
+    private boolean reserve() {
+        int countOffset = offset(COUNT_INDEX);
+        while (true) {
+            long count = (long) LONGS.getVolatile(buffer, countOffset);
+            if (count >= getMaxTicketCapacity()) {
+                return false;
+            }
+            if (LONGS.compareAndSet(buffer, countOffset, count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Claims the first ticket found from the head onwards, holds it for the
+     * given delay and then frees its slot to complete the sale. A scan that
+     * finds nothing is repeated if tickets were added meanwhile, so a sale is
+     * not refused while the pool holds tickets it simply walked past.
+     */
+    private Integer take(int delayMillis) {
+        for (int attempt = 0; attempt < MAX_EMPTY_RESCANS; attempt++) {
+            long addedBefore = (long) LONGS.getVolatile(buffer, offset(ADDED_INDEX));
+            if ((long) LONGS.getVolatile(buffer, offset(COUNT_INDEX)) == 0) {
+                return null;
+            }
+            long start = (long) LONGS.getVolatile(buffer, offset(HEAD_INDEX));
+            for (long probe = start; probe < start + slots; probe++) {
+                int slot = slotOffset(probe);
+                long ticket = (long) LONGS.getVolatile(buffer, slot);
+                if (ticket > EMPTY && LONGS.compareAndSet(buffer, slot, ticket, CLAIMED | owner << 32 | ticket)) {
+                    if (delayMillis > 0) {
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(delayMillis));
+                    }
+                    LONGS.setVolatile(buffer, slot, EMPTY); // only the claim's owner may free it
+                    LONGS.getAndAdd(buffer, offset(COUNT_INDEX), -1L);
+                    LONGS.getAndAdd(buffer, offset(SOLD_INDEX), 1L);
+                    advanceHead(start, probe + 1);
+                    return (int) ticket;
+                }
+            }
+            if ((long) LONGS.getVolatile(buffer, offset(ADDED_INDEX)) == addedBefore) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Moves the head hint past a slot that was just emptied, unless another
+     * worker has already moved it
+     */
+    private void advanceHead(long expected, long next) {
+        LONGS.compareAndSet(buffer, offset(HEAD_INDEX), expected, next);
+    }
+
+    private static boolean isAlive(long pid) {
+        return ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false);
+    }
+
+    private static long ownerOf(long claim) {
+        return (claim & ~CLAIMED) >>> 32;
+    }
+
+    private int slotOffset(long position) {
+        return offset(HEADER_LONGS + (int) Math.floorMod(position, (long) slots));
+    }
+
+    private static int offset(int index) {
+        return index * Long.BYTES;
+    }
+
+    private static long bytesFor(int slots) {
+        return (long) (HEADER_LONGS + slots) * Long.BYTES;
+    }
+}
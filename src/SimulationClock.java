@@ -0,0 +1,46 @@
+/**
+ * Source of time for the simulation. Vendors, customers and the ticket pool
+ * read time, pace themselves and lock through a clock so that the same
+ * simulation can run against the wall clock or against a virtual clock that
+ * skips straight to the next scheduled action.
+ */
+public interface SimulationClock {
+    /**
+     * Returns the current time in nanoseconds, for measuring intervals
+     */
+    long nanoTime();
+
+    /**
+     * Returns the current time in milliseconds since the epoch
+     */
+    long currentTimeMillis();
+
+    /**
+     * Pauses the calling thread for the given number of milliseconds
+     *
+     * @throws InterruptedException if the thread is interrupted while paused
+     */
+    void sleep(long millis) throws InterruptedException;
+
+    /**
+     * Creates a lock that threads using this clock can safely wait on
+     *
+     * @param fair Whether the lock should be granted in arrival order; see
+     *             {@link SimulationLock#isFair()} for what the clock chose
+     */
+    SimulationLock newLock(boolean fair);
+
+    /**
+     * Marks the calling thread as an actor whose progress the clock must
+     * wait for. Called when an actor starts running.
+     */
+    default void register() {
+    }
+
+    /**
+     * Removes the calling thread from the clock's actors. Called when an
+     * actor stops running.
+     */
+    default void unregister() {
+    }
+}
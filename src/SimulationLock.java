@@ -0,0 +1,25 @@
+/**
+ * Mutual exclusion lock handed out by a SimulationClock. Only plain
+ * lock/unlock is offered, because that is all the ticket pool needs and all
+ * a virtual clock can schedule without timed waits.
+ */
+public interface SimulationLock {
+    /**
+     * Takes the lock, waiting as long as needed. Reentrant for the thread
+     * already holding it.
+     */
+    void lock();
+
+    /**
+     * Releases one hold of the lock
+     *
+     * @throws IllegalMonitorStateException if the calling thread does not hold it
+     */
+    void unlock();
+
+    /**
+     * Returns whether the lock is granted in arrival order. A clock may
+     * hand out a fair lock even when an unfair one was asked for.
+     */
+    boolean isFair();
+}
@@ -0,0 +1,80 @@
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Measures how long a cold start takes to reach the first ticket sale.
+ * Follows the CLI's startup path: configure, seed the pool with the initial
+ * tickets, then start a VIP customer and wait for its first purchase. Run it
+ * in a fresh JVM each time, e.g. once plain and once with a class data
+ * sharing archive (see build-cds.sh), to compare startup settings.
+ *
+ * Usage: java StartupBenchmark [--tickets N] [--gui]
+ * --gui opens the output console window before the first sale, as the CLI
+ * did before the window was deferred.
+ */
+public class StartupBenchmark {
+
+    /**
+     * Runs one startup and prints the time spent in each phase
+     *
+     * @param args See the class description
+     */
+    public static void main(String[] args) throws InterruptedException, InvocationTargetException {
+        long mainStarted = System.nanoTime();
+        long mainStartedMillis = System.currentTimeMillis();
+        int totalTickets = 100_000;
+        boolean gui = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--tickets":
+                    totalTickets = Integer.parseInt(args[++i]);
+                    break;
+                case "--gui":
+                    gui = true;
+                    break;
+                default:
+                    System.out.println("Ignoring unknown argument: " + args[i]);
+            }
+        }
+
+        long guiReady = mainStarted;
+        if (gui) {
+            OutputConsole.getInstance().open();
+            SwingUtilities.invokeAndWait(() -> {
+            }); // the window is built by the time this runs
+            guiReady = System.nanoTime();
+        }
+
+        TicketPool ticketPool = new TicketPool();
+        WaitingRoom waitingRoom = new WaitingRoom(ticketPool, 5, 10);
+        Configuration configuration = new Configuration();
+        configuration.configure(totalTickets, totalTickets, 1000, 1000);
+        configuration.applyConfiguration(ticketPool);
+        long poolReady = System.nanoTime();
+
+        Thread buyer = new Thread(new VIPCustomer("VIP Customer-1", ticketPool, waitingRoom), "benchmark-buyer");
+        buyer.setDaemon(true);
+        buyer.start();
+        while (ticketPool.getTicketsSold() == 0) {
+            Thread.onSpinWait();
+        }
+        long firstSale = System.nanoTime();
+        buyer.interrupt();
+
+        // Read the JVM start time last so loading the management classes is not measured
+        long jvmToMain = mainStartedMillis - ManagementFactory.getRuntimeMXBean().getStartTime();
+        long mainToSale = TimeUnit.NANOSECONDS.toMillis(firstSale - mainStarted);
+        System.out.printf("Tickets seeded:        %d%n", totalTickets);
+        System.out.printf("JVM start to main:     %d ms%n", jvmToMain);
+        if (gui) {
+            System.out.printf("Console window:        %d ms%n", TimeUnit.NANOSECONDS.toMillis(guiReady - mainStarted));
+        }
+        System.out.printf("Configure and seed:    %d ms%n", TimeUnit.NANOSECONDS.toMillis(poolReady - guiReady));
+        System.out.printf("Pool ready to sale:    %d ms%n", TimeUnit.NANOSECONDS.toMillis(firstSale - poolReady));
+        System.out.printf("Time to first sale:    %d ms (%d ms after main)%n", jvmToMain + mainToSale, mainToSale);
+        System.exit(0);
+    }
+}
@@ -0,0 +1,58 @@
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Clock backed by the real system time. Sleeping really pauses the thread,
+ * so a simulation runs in real time.
+ */
+public class SystemClock implements SimulationClock {
+    private static final SystemClock instance = new SystemClock();
+
+    /**
+     * Private constructor for Singleton pattern.
+     */
+    private SystemClock() {
+    }
+
+    /**
+     * Returns the single instance of the system clock
+     */
+    public static SystemClock getInstance() {
+        return instance;
+    }
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        Thread.sleep(millis);
+    }
+
+    @Override
+    public SimulationLock newLock(boolean fair) {
+        ReentrantLock lock = new ReentrantLock(fair);
+        return new SimulationLock() {
+            @Override
+            public void lock() {
+                lock.lock();
+            }
+
+            @Override
+            public void unlock() {
+                lock.unlock();
+            }
+
+            @Override
+            public boolean isFair() {
+                return lock.isFair();
+            }
+        };
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * Operations every ticket pool implementation provides to vendors and
+ * customers. Used by the concurrency stress harness so any implementation
+ * can be checked for overselling, double-selling and lost tickets.
+ */
+public interface TicketInventory {
+    /**
+     * Adds one new ticket on behalf of a vendor
+     *
+     * @return The new ticket's number, or null if the pool is full
+     */
+    Integer addTicket(String vendorName);
+
+    /**
+     * Sells a ticket to a regular customer
+     *
+     * @return The ticket's number, or null if no tickets are available
+     */
+    Integer removeTicket(int buyerId, String customerName);
+
+    /**
+     * Sells a ticket to a VIP customer
+     *
+     * @return The ticket's number, or null if no tickets are available
+     */
+    Integer removeVIPTicket(int buyerId, String customerName);
+
+    /**
+     * Returns the current number of tickets in the pool
+     */
+    int getTicketCount();
+
+    /**
+     * Returns the maximum number of tickets the pool can hold
+     */
+    int getMaxTicketCapacity();
+
+    /**
+     * Updates the maximum number of tickets the pool can hold
+     */
+    void setMaxTicketCapacity(int maxTicketCapacity);
+}
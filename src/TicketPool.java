@@ -1,100 +1,445 @@
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Manages a thread-safe pool of tickets that can be added by vendors
  * and purchased by customers. Controls ticket distribution and maintains
- * capacity limits.
+ * capacity limits. Purchases are serialized by a purchase lock that can be
+ * switched to fair (FIFO) mode, and every attempt is recorded by a
+ * {@link FairnessTracker}. All timing goes through a {@link SimulationClock}.
+ * Adds, purchases and lock waits are reported as Flight Recorder events.
  */
-public class TicketPool {
+public class TicketPool implements TicketInventory {
     private int ticketId = 1;
+    private int ticketIdStride = 1;
     private final List<Integer> tickets;
     private int maxTicketCapacity;
-    private final Object lockObject = new Object();
-    private final OutputConsole console = OutputConsole.getInstance();
+    private volatile long ticketsSold;
+    private final AtomicLong unmetDemand = new AtomicLong();
+    private final SimulationLock purchaseLock;
+    private final SimulationClock clock;
+    private final FairnessTracker fairnessTracker = new FairnessTracker();
+    private volatile int purchaseDelay = 100;
+    private volatile boolean consoleOutput = true;
 
     /**
      * Creates a new empty ticket pool with synchronized access
      */
     public TicketPool() {
+        this(false);
+    }
+
+    /**
+     * Creates a new empty ticket pool
+     *
+     * @param fairLock Whether purchases are granted in arrival order (fair) or
+     *                 to whichever thread wins the lock (unfair, higher
+     *                 throughput)
+     */
+    public TicketPool(boolean fairLock) {
+        this(fairLock, SystemClock.getInstance());
+    }
+
+    /**
+     * Creates a new empty ticket pool that keeps time with the given clock
+     *
+     * @param fairLock Whether purchases are granted in arrival order
+     * @param clock    The clock used for purchase delays and wait times
+     */
+    public TicketPool(boolean fairLock, SimulationClock clock) {
         this.tickets = Collections.synchronizedList(new LinkedList<>());
+        this.clock = clock;
+        this.purchaseLock = clock.newLock(fairLock);
     }
 
     /**
-     * Updates the maximum number of tickets the pool can hold
+     * Updates the maximum number of tickets the pool can hold.
+     * Safe to call while sales continue; if the new capacity is below the
+     * current ticket count, vendors are held back until sales drain the pool.
      */
+    @Override
     public synchronized void setMaxTicketCapacity(int maxTicketCapacity) {
         this.maxTicketCapacity = maxTicketCapacity;
     }
 
     /**
-     * Adds tickets to the pool through administrative action
+     * Sets how long a regular customer's purchase holds the purchase lock
+     * (in milliseconds). Defaults to 100.
+     */
+    public void setPurchaseDelay(int millis) {
+        this.purchaseDelay = millis;
+    }
+
+    /**
+     * Turns the per-ticket console messages on or off. With output off the
+     * pool never touches the GUI console, so it can run headless.
+     */
+    public void setConsoleOutput(boolean enabled) {
+        this.consoleOutput = enabled;
+    }
+
+    /**
+     * Sets the ticket numbering used for new tickets. Partitions of a
+     * clustered pool use distinct starting numbers with a common stride so
+     * ticket numbers never collide across nodes. Must be called before any
+     * tickets are added.
+     *
+     * @param first  Number of the first ticket this pool issues
+     * @param stride Gap between consecutive ticket numbers
+     */
+    public synchronized void setTicketIdSequence(int first, int stride) {
+        this.ticketId = first;
+        this.ticketIdStride = stride;
+    }
+
+    /**
+     * Adds tickets to the pool through administrative action, e.g. to seed
+     * the pool at startup. The tickets are numbered into a pre-sized batch
+     * and added in one step, with one summary line on the console.
      * Returns false if adding would exceed capacity
      */
-    public synchronized void addTickets(int count) {
-        if (tickets.size() + count <= maxTicketCapacity) {
-            for (int i = 0; i < count; i++) {
-                tickets.add(ticketId++);
-                console.printSystem(
-                        String.format("Ticket #%d added by Admin. Current total: %d", (ticketId - 1), tickets.size()));
+    public synchronized boolean addTickets(int count) {
+        if (tickets.size() + count > maxTicketCapacity) {
+            return false;
+        }
+        if (count <= 0) {
+            return true;
+        }
+        List<Integer> batch = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            batch.add(nextTicketId());
+        }
+        tickets.addAll(batch);
+        if (TicketingEvents.isActive()) {
+            TicketingEvents.TicketsSeeded event = new TicketingEvents.TicketsSeeded();
+            if (event.isEnabled()) {
+                event.count = count;
+                event.firstTicketId = batch.get(0);
+                event.lastTicketId = batch.get(count - 1);
+                event.poolSize = tickets.size();
+                event.commit();
             }
         }
+        if (consoleOutput) {
+            OutputConsole.getInstance().printSystem(String.format(
+                    "%d tickets (#%d to #%d) added by Admin. Current total: %d",
+                    count, batch.get(0), batch.get(count - 1), tickets.size()));
+        }
+        return true;
     }
 
     /**
      * Adds tickets to the pool through a specific vendor
      * Returns false if adding would exceed capacity
      */
-    public synchronized void addTickets(int count, String vendorName) {
+    public synchronized boolean addTickets(int count, String vendorName) {
         if (tickets.size() + count <= maxTicketCapacity) {
             for (int i = 0; i < count; i++) {
-                tickets.add(ticketId++);
-                console.printVendor(String.format("%s : Added ticket #%d. Current total: %d",
-                        vendorName, (ticketId - 1), tickets.size()));
+                addTicket(vendorName);
             }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds one ticket to the pool through a specific vendor
+     * Returns the ticket number, or null if the pool is full
+     */
+    @Override
+    public synchronized Integer addTicket(String vendorName) {
+        if (tickets.size() >= maxTicketCapacity) {
+            return null;
+        }
+        int id = nextTicketId();
+        tickets.add(id);
+        recordTicketAdded(vendorName, id);
+        if (consoleOutput) {
+            OutputConsole.getInstance().printVendor(String.format("%s : Added ticket #%d. Current total: %d",
+                    vendorName, id, tickets.size()));
         }
+        return id;
     }
 
     /**
      * Removes a ticket for a VIP customer with priority access
-     * Returns null if no tickets are available
+     * Returns null if no tickets are available; the buyer id must be over 0
      */
-    public void removeVIPTicket(String customerName) {
-        synchronized (lockObject) {
+    @Override
+    public Integer removeVIPTicket(int buyerId, String customerName) {
+        FairnessTracker.checkBuyerId(buyerId); // before the sale, so a bad id cannot lose a ticket
+        long waitStart = clock.nanoTime();
+        lockForPurchase(customerName, true);
+        try {
+            long waitNanos = clock.nanoTime() - waitStart;
+            Integer ticket = null;
             if (!tickets.isEmpty()) {
-                Integer ticket = tickets.removeFirst();
-                console.printVIP(String.format("%s (VIP) : Purchased ticket #%d. Remaining tickets: %d",
-                        customerName, ticket, tickets.size()));
+                TicketingEvents.VIPTicketPurchase event = null;
+                if (TicketingEvents.isActive()) {
+                    event = new TicketingEvents.VIPTicketPurchase();
+                    event.begin();
+                }
+                ticket = tickets.removeFirst();
+                ticketsSold++;
+                if (event != null) {
+                    event.end();
+                    if (event.shouldCommit()) {
+                        event.customer = customerName;
+                        event.ticketId = ticket;
+                        event.remaining = tickets.size();
+                        event.commit();
+                    }
+                }
+                if (consoleOutput) {
+                    OutputConsole.getInstance().printVIP(String.format(
+                            "%s (VIP) : Purchased ticket #%d. Remaining tickets: %d",
+                            customerName, ticket, tickets.size()));
+                }
+            }
+            if (ticket == null) {
+                unmetDemand.incrementAndGet();
             }
+            fairnessTracker.recordAttempt(buyerId, customerName, waitNanos, ticket != null);
+            return ticket;
+        } finally {
+            purchaseLock.unlock();
         }
     }
 
     /**
      * Removes a ticket for a regular customer
-     * Includes a small delay and returns null if no tickets are available
+     * Includes a small delay and returns null if no tickets are available;
+     * the buyer id must be over 0
      */
-    public void removeTicket(String customerName) {
-        synchronized (lockObject) {
+    @Override
+    public Integer removeTicket(int buyerId, String customerName) {
+        FairnessTracker.checkBuyerId(buyerId); // before the sale, so a bad id cannot lose a ticket
+        long waitStart = clock.nanoTime();
+        lockForPurchase(customerName, false);
+        try {
+            long waitNanos = clock.nanoTime() - waitStart;
+            Integer ticket = null;
             if (!tickets.isEmpty()) {
-                try {
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
+                TicketingEvents.TicketPurchase event = null;
+                if (TicketingEvents.isActive()) {
+                    event = new TicketingEvents.TicketPurchase();
+                    event.begin();
+                }
+                if (purchaseDelay > 0) {
+                    try {
+                        clock.sleep(purchaseDelay);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
                 }
                 if (!tickets.isEmpty()) {
-                    Integer ticket = tickets.removeFirst();
-                    console.printCustomer(String.format("%s : Purchased ticket #%d. Remaining tickets: %d",
-                            customerName, ticket, tickets.size()));
+                    ticket = tickets.removeFirst();
+                    ticketsSold++;
+                    if (event != null) {
+                        event.end();
+                        if (event.shouldCommit()) {
+                            event.customer = customerName;
+                            event.ticketId = ticket;
+                            event.remaining = tickets.size();
+                            event.commit();
+                        }
+                    }
+                    if (consoleOutput) {
+                        OutputConsole.getInstance().printCustomer(String.format(
+                                "%s : Purchased ticket #%d. Remaining tickets: %d",
+                                customerName, ticket, tickets.size()));
+                    }
+                }
+            }
+            if (ticket == null) {
+                unmetDemand.incrementAndGet();
+            }
+            fairnessTracker.recordAttempt(buyerId, customerName, waitNanos, ticket != null);
+            return ticket;
+        } finally {
+            purchaseLock.unlock();
+        }
+    }
+
+    /**
+     * Hands part of this pool over to another partition of a clustered pool.
+     * Removes up to half of the tickets (at most maxTickets) together with
+     * one unit of capacity per ticket, so the receiver always has room for
+     * them no matter what its vendors add meanwhile. If there are no tickets
+     * to give and the receiver has no room at all, half of the spare capacity
+     * is given instead so the receiver's vendors can produce.
+     * Buyers and then vendors are held back while the transfer is taken
+     * out; vendors only once the purchase lock is held, so they are not
+     * stuck behind a queue of buyers on a fair lock.
+     *
+     * @param maxTickets           Most tickets the receiver asked for
+     * @param receiverFreeCapacity Room the receiver had for tickets when it asked
+     * @return The tickets and capacity removed from this pool
+     */
+    public TicketTransfer transferOut(int maxTickets, int receiverFreeCapacity) {
+        purchaseLock.lock();
+        try {
+            synchronized (this) {
+                int count = Math.min(Math.min(maxTickets, (tickets.size() + 1) / 2), maxTicketCapacity);
+                int[] given = new int[count];
+                for (int i = 0; i < count; i++) {
+                    given[i] = tickets.removeFirst();
+                }
+                int capacity = count;
+                if (count == 0 && receiverFreeCapacity == 0) {
+                    capacity = Math.max(0, maxTicketCapacity - tickets.size()) / 2;
+                }
+                maxTicketCapacity -= capacity;
+                return new TicketTransfer(given, capacity);
+            }
+        } finally {
+            purchaseLock.unlock();
+        }
+    }
+
+    /**
+     * Hands every ticket and all capacity of this pool over to another
+     * partition, e.g. when a cluster node leaves
+     *
+     * @return The tickets and capacity removed from this pool
+     */
+    public TicketTransfer transferAll() {
+        purchaseLock.lock();
+        try {
+            synchronized (this) {
+                int[] given = new int[tickets.size()];
+                for (int i = 0; i < given.length; i++) {
+                    given[i] = tickets.removeFirst();
                 }
+                TicketTransfer transfer = new TicketTransfer(given, maxTicketCapacity);
+                maxTicketCapacity = 0;
+                return transfer;
             }
+        } finally {
+            purchaseLock.unlock();
         }
     }
 
+    /**
+     * Takes in tickets and capacity handed over by another partition. All of
+     * the capacity is kept, but never more tickets than it allows; tickets
+     * that do not fit (only possible if this pool was already over capacity)
+     * are returned to be handed on to a partition with room.
+     *
+     * @return The tickets that were not taken in, without capacity (usually
+     *         empty)
+     */
+    public synchronized TicketTransfer acceptTransfer(TicketTransfer transfer) {
+        maxTicketCapacity += transfer.getCapacity();
+        int[] offered = transfer.getTickets();
+        int kept = Math.min(offered.length, Math.max(0, maxTicketCapacity - tickets.size()));
+        for (int i = 0; i < kept; i++) {
+            tickets.add(offered[i]);
+        }
+        return new TicketTransfer(Arrays.copyOfRange(offered, kept, offered.length), 0);
+    }
+
+    /**
+     * Returns the maximum number of tickets the pool can currently hold
+     */
+    @Override
+    public synchronized int getMaxTicketCapacity() {
+        return maxTicketCapacity;
+    }
+
+    /**
+     * Records that a buyer wanted a ticket while the pool had none
+     */
+    public void recordUnmetDemand() {
+        unmetDemand.incrementAndGet();
+    }
+
+    /**
+     * Returns how many times buyers wanted a ticket while the pool had none.
+     * A clustered node only asks its peers for tickets while this grows.
+     */
+    public long getUnmetDemand() {
+        return unmetDemand.get();
+    }
+
     /**
      * Returns the current number of tickets in the pool
      */
+    @Override
     public synchronized int getTicketCount() {
         return tickets.size();
     }
+
+    /**
+     * Returns the total number of tickets sold from this pool
+     */
+    public long getTicketsSold() {
+        return ticketsSold;
+    }
+
+    /**
+     * Returns the tracker recording per-buyer purchase attempts
+     */
+    public FairnessTracker getFairnessTracker() {
+        return fairnessTracker;
+    }
+
+    /**
+     * Returns whether purchases are granted in arrival order. This is the
+     * lock actually in use, which on a virtual clock is always fair.
+     */
+    public boolean isFairLock() {
+        return purchaseLock.isFair();
+    }
+
+    /**
+     * Returns the clock this pool and its actors keep time with
+     */
+    public SimulationClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Takes the purchase lock, reporting the wait as a Flight Recorder event
+     * when it exceeds the event's threshold
+     */
+    private void lockForPurchase(String customerName, boolean vip) {
+        if (!TicketingEvents.isActive()) {
+            purchaseLock.lock();
+            return;
+        }
+        TicketingEvents.PurchaseLockWait event = new TicketingEvents.PurchaseLockWait();
+        event.begin();
+        purchaseLock.lock();
+        event.end();
+        if (event.shouldCommit()) {
+            event.customer = customerName;
+            event.vip = vip;
+            event.fairLock = purchaseLock.isFair();
+            event.commit();
+        }
+    }
+
+    private void recordTicketAdded(String addedBy, int id) {
+        if (!TicketingEvents.isActive()) {
+            return;
+        }
+        TicketingEvents.TicketAdded event = new TicketingEvents.TicketAdded();
+        if (event.isEnabled()) {
+            event.addedBy = addedBy;
+            event.ticketId = id;
+            event.poolSize = tickets.size();
+            event.commit();
+        }
+    }
+
+    private int nextTicketId() {
+        int id = ticketId;
+        ticketId += ticketIdStride;
+        return id;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,35 @@
+/**
+ * A batch of tickets and pool capacity handed from one ticket pool partition
+ * to another. Every ticket given away travels with one unit of capacity (a
+ * transfer may carry more capacity than tickets), so the sum of all
+ * partitions' capacities never changes and a receiver always has room for
+ * the tickets it is sent. Only tickets turned away by a partition that was
+ * already over capacity travel without capacity.
+ */
+public final class TicketTransfer {
+    private final int[] tickets;
+    private final int capacity;
+
+    /**
+     * Creates a transfer of the given ticket ids and capacity units
+     */
+    public TicketTransfer(int[] tickets, int capacity) {
+        this.tickets = tickets;
+        this.capacity = capacity;
+    }
+
+    public int[] getTickets() {
+        return tickets;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns true if nothing is being transferred
+     */
+    public boolean isEmpty() {
+        return tickets.length == 0 && capacity == 0;
+    }
+}
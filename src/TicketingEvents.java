@@ -0,0 +1,161 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder events emitted by the ticketing system. Events are
+ * cheap when no recording is running; timed events carry a threshold so
+ * only slow occurrences are recorded, and the per-ticket add event is off
+ * unless a recording enables it (seeding is one TicketsSeeded event). Callers check {@link #isActive()}
+ * before creating an event, since the first event created sets up all of
+ * Flight Recorder and would otherwise add hundreds of milliseconds to startup.
+ */
+public final class TicketingEvents {
+    private static final String CATEGORY = "Ticketing";
+
+    private TicketingEvents() {
+    }
+
+    @Name("ticketing.TicketAdded")
+    @Label("Ticket Added")
+    @Category(CATEGORY)
+    @Description("A ticket was added to the pool by a vendor")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class TicketAdded extends Event {
+        @Label("Added By")
+        public String addedBy;
+
+        @Label("Ticket Id")
+        public int ticketId;
+
+        @Label("Pool Size")
+        public int poolSize;
+    }
+
+    @Name("ticketing.TicketsSeeded")
+    @Label("Tickets Seeded")
+    @Category(CATEGORY)
+    @Description("A batch of tickets was added to the pool by the admin, e.g. at startup")
+    @StackTrace(false)
+    public static final class TicketsSeeded extends Event {
+        @Label("Tickets")
+        public int count;
+
+        @Label("First Ticket Id")
+        public int firstTicketId;
+
+        @Label("Last Ticket Id")
+        public int lastTicketId;
+
+        @Label("Pool Size")
+        public int poolSize;
+    }
+
+    @Name("ticketing.TicketPurchase")
+    @Label("Ticket Purchase")
+    @Category(CATEGORY)
+    @Description("A regular customer bought a ticket, including the purchase delay (recorded when it takes 1.5x the default delay)")
+    @Threshold("150 ms")
+    @StackTrace(false)
+    public static final class TicketPurchase extends Event {
+        @Label("Customer")
+        public String customer;
+
+        @Label("Ticket Id")
+        public int ticketId;
+
+        @Label("Remaining Tickets")
+        public int remaining;
+    }
+
+    @Name("ticketing.VIPTicketPurchase")
+    @Label("VIP Ticket Purchase")
+    @Category(CATEGORY)
+    @Description("A VIP customer bought a ticket")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    public static final class VIPTicketPurchase extends Event {
+        @Label("Customer")
+        public String customer;
+
+        @Label("Ticket Id")
+        public int ticketId;
+
+        @Label("Remaining Tickets")
+        public int remaining;
+    }
+
+    @Name("ticketing.PurchaseLockWait")
+    @Label("Purchase Lock Wait")
+    @Category(CATEGORY)
+    @Description("Time a buyer spent waiting for the ticket pool's purchase lock")
+    @Threshold("1 ms")
+    public static final class PurchaseLockWait extends Event {
+        @Label("Customer")
+        public String customer;
+
+        @Label("VIP")
+        public boolean vip;
+
+        @Label("Fair Lock")
+        public boolean fairLock;
+    }
+
+    @Name("ticketing.ConsoleFlush")
+    @Label("Console Batch Flush")
+    @Category(CATEGORY)
+    @Description("A batch of queued messages written to the output console on the event dispatch thread")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    public static final class ConsoleFlush extends Event {
+        @Label("Messages")
+        public int messages;
+    }
+
+    @Name("ticketing.ActorLifecycle")
+    @Label("Actor Lifecycle")
+    @Category(CATEGORY)
+    @Description("A vendor, customer or VIP customer started or stopped running")
+    @StackTrace(false)
+    public static final class ActorLifecycle extends Event {
+        @Label("Actor")
+        public String actor;
+
+        @Label("Actor Type")
+        public String actorType;
+
+        @Label("Phase")
+        public String phase;
+    }
+
+    /**
+     * Returns true once Flight Recorder has been started in this JVM, either
+     * by the profile command, -XX:StartFlightRecording or jcmd
+     */
+    static boolean isActive() {
+        return FlightRecorder.isInitialized();
+    }
+
+    /**
+     * Records that an actor started or stopped running
+     */
+    static void actorLifecycle(String actor, String actorType, String phase) {
+        if (!isActive()) {
+            return;
+        }
+        ActorLifecycle event = new ActorLifecycle();
+        if (event.isEnabled()) {
+            event.actor = actor;
+            event.actorType = actorType;
+            event.phase = phase;
+            event.commit();
+        }
+    }
+}
@@ -1,3 +1,8 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
 import java.util.Scanner;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -14,7 +19,9 @@ import java.util.concurrent.Future;
  * for controlling the simulation and monitoring its status.
  */
 public class TicketingSystemCLI {
+    private final SimulationClock clock;
     private final TicketPool ticketPool;
+    private final WaitingRoom waitingRoom;
     private final ExecutorService executorService;
     private final Scanner scanner;
     private final Configuration configuration;
@@ -26,15 +33,29 @@ public class TicketingSystemCLI {
     private final List<Future<?>> vipCustomerTasks;
     private int vipCustomerCounter;
     private final OutputConsole outputConsole;
+    private final Profiler profiler;
+    private final Path configFile;
+    private Thread configWatcher;
+    private ClusterNode clusterNode;
+    private long actorsSubmitted;
 
     /**
      * Initializes the ticketing system
      * Sets up the thread pool, scanner, and required data structures
-     * for managing vendors and customers. Creates the output console
-     * for displaying simulation events.
+     * for managing vendors and customers. The output console window is
+     * not built until the configuration has been applied.
+     *
+     * @param configFile Optional configuration file to read and watch (may be
+     *                   null to prompt for the configuration instead)
      */
-    public TicketingSystemCLI() {
-        this.ticketPool = new TicketPool();
+    public TicketingSystemCLI(Path configFile) {
+        this.configFile = configFile;
+        this.clock = "virtual".equalsIgnoreCase(System.getProperty("ticketing.clock"))
+                ? new VirtualClock()
+                : SystemClock.getInstance();
+        this.ticketPool = new TicketPool(Boolean.getBoolean("ticketing.fairLock"), clock);
+        this.waitingRoom = new WaitingRoom(ticketPool, Integer.getInteger("ticketing.buyerRate", 5),
+                Integer.getInteger("ticketing.buyerBurst", 10));
         this.executorService = Executors.newCachedThreadPool(); // Grows/shrinks pool as needed
         this.scanner = new Scanner(System.in);
         this.configuration = new Configuration();
@@ -45,19 +66,47 @@ public class TicketingSystemCLI {
         this.vendorCounter = 0;
         this.customerCounter = 0;
         this.vipCustomerCounter = 0;
+        this.profiler = new Profiler();
         this.outputConsole = OutputConsole.getInstance();
-        this.outputConsole.setVisible(true);
+        this.outputConsole.setClock(clock);
     }
 
     /**
      * Starts the ticketing system by configuring initial parameters
-     * and launching the main simulation loop.
+     * and launching the main simulation loop. The output console window
+     * opens in the background once the pool is ready.
      */
     public void start() {
         configureSystem();
+        outputConsole.open();
+        if (clusterNode != null) {
+            Thread clusterThread = new Thread(clusterNode, "cluster-node");
+            clusterThread.setDaemon(true);
+            clusterThread.start();
+        }
         runSimulation();
     }
 
+    /**
+     * Runs this process as one node of a clustered ticket pool. The ticket
+     * pool configured at startup becomes this node's partition; tickets move
+     * between nodes when a partition runs dry. The capacity and initial
+     * tickets configured on each node are that node's share, so the cluster's
+     * capacity is the sum of the nodes' shares. After startup capacity only
+     * moves between nodes; reconfiguring a node changes its rates only.
+     * Must be called before start().
+     *
+     * @param nodeId   Unique id of this node in the cluster
+     * @param bindHost Local address to listen on for other nodes
+     * @param port     Port to listen on for other nodes
+     * @param peers    Addresses of nodes already in the cluster
+     */
+    public void enableCluster(int nodeId, String bindHost, int port, List<InetSocketAddress> peers) {
+        ClusterNode.assignTicketIds(nodeId, ticketPool);
+        configuration.setCapacityFixed(true);
+        this.clusterNode = new ClusterNode(nodeId, bindHost, port, peers, ticketPool);
+    }
+
     /**
      * Prompts user for system configuration parameters including:
      * - Maximum ticket capacity (the maximum allowed in the pool)
@@ -67,12 +116,28 @@ public class TicketingSystemCLI {
      * - Customer retrieval rate (the rate at which customers retrieve tickets this
      * is in miliseconds)
      * Validates inputs and applies configuration to the ticket pool.
+     * When a configuration file was given it is read instead of prompting,
+     * and watched for changes for the rest of the session.
      */
     private void configureSystem() {
         int boxWidth = 80;
         String title = "SYSTEM CONFIGURATION";
 
         printBorder(title, boxWidth);
+        if (configFile != null) {
+            try {
+                configuration.configure(configFile);
+                configuration.applyConfiguration(ticketPool);
+                System.out.println("Loaded configuration " + configuration.getSnapshot() + " from " + configFile);
+                System.out.println("-".repeat(82));
+                configWatcher = new Thread(new ConfigurationWatcher(configFile, configuration), "config-watcher");
+                configWatcher.setDaemon(true);
+                configWatcher.start();
+                return;
+            } catch (IOException | IllegalArgumentException e) {
+                System.out.println("Could not load " + configFile + " (" + e.getMessage() + "). Please enter it manually.");
+            }
+        }
         int maxTicketCapacity = getIntInput("Enter maximum ticket capacity: ");
 
         int totalTickets = getIntInput("Enter total tickets: ");
@@ -130,31 +195,49 @@ public class TicketingSystemCLI {
             System.out.println("Enter Command:");
             System.out.println("╔════════════════════════════════════════════════════════╗");
             System.out.println("║  start   - Start the simulation                        ║");
+            System.out.println("║  advance - Run a virtual-clock simulation further      ║");
             System.out.println("║  stop    - Stop the simulation                         ║");
             System.out.println("║  status  - Display system status                       ║");
+            System.out.println("║  fairness - Display ticket distribution across buyers  ║");
             System.out.println("║  add     - Add vendor, customer or VIP customer        ║");
             System.out.println("║  remove  - Remove vendor, customer or VIP customer     ║");
+            System.out.println("║  reconfigure - Change capacity or rates while running  ║");
+            System.out.println("║  profile - Record a JFR profile (start/stop/dump)      ║");
             System.out.println("║  exit    - Exit the application                        ║");
             System.out.println("╚════════════════════════════════════════════════════════╝");
             System.out.print("\nCommand > ");
-            String command = scanner.nextLine().trim().toLowerCase();
+            String[] input = scanner.nextLine().trim().toLowerCase().split("\\s+", 2);
+            String command = input[0];
+            String argument = input.length > 1 ? input[1] : "";
 
             switch (command) {
                 case "start":
                     startSimulation();
                     break;
+                case "advance":
+                    advanceSimulation();
+                    break;
                 case "stop":
                     stopSimulation();
                     break;
                 case "status":
                     printStatus();
                     break;
+                case "fairness":
+                    printFairness();
+                    break;
                 case "add":
                     handleAddCommand();
                     break;
                 case "remove":
                     handleRemoveCommand();
                     break;
+                case "reconfigure":
+                    handleReconfigureCommand();
+                    break;
+                case "profile":
+                    handleProfileCommand(argument);
+                    break;
                 case "exit":
                     exitSimulation();
                     return;
@@ -218,6 +301,71 @@ public class TicketingSystemCLI {
         }
     }
 
+    /**
+     * Starts, stops or dumps a Java Flight Recorder recording of the
+     * simulation. Prompts for the action if it was not given with the command.
+     *
+     * @param action "start", "stop" or "dump" (may be empty)
+     */
+    private void handleProfileCommand(String action) {
+        if (action.isEmpty()) {
+            System.out.println("Enter profiling action (start/stop/dump): ");
+            action = scanner.nextLine().trim().toLowerCase();
+        }
+
+        try {
+            switch (action) {
+                case "start":
+                    System.out.println(profiler.start()
+                            ? "Profiling started."
+                            : "Profiling is already running.");
+                    break;
+                case "stop":
+                    System.out.println("Profiling stopped. Recording written to " + profiler.stop());
+                    break;
+                case "dump":
+                    System.out.println("Recording written to " + profiler.dump());
+                    break;
+                default:
+                    System.out.println("Invalid action. Please enter 'start', 'stop' or 'dump'.");
+            }
+        } catch (IOException | ParseException e) {
+            System.out.println("Profiling failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replaces the running configuration without stopping the simulation.
+     * Accepts either a path to a .properties/.json file or "key=value" pairs
+     * for maxTicketCapacity, ticketReleaseRate and customerRetrievalRate.
+     */
+    private void handleReconfigureCommand() {
+        int boxWidth = 80;
+        String title = "RECONFIGURE";
+
+        printBorder(title, boxWidth);
+        System.out.println("Current configuration: " + configuration.getSnapshot());
+        System.out.println("Enter a configuration file path or key=value pairs ");
+        System.out.println("(e.g. maxTicketCapacity=200, ticketReleaseRate=500): ");
+        String input = scanner.nextLine().trim();
+        if (input.isEmpty()) {
+            System.out.println("Configuration unchanged.");
+            return;
+        }
+
+        try {
+            ConfigurationSnapshot snapshot = input.contains("=")
+                    ? configuration.reconfigure(input)
+                    : configuration.reload(Paths.get(input));
+            System.out.println("Configuration updated: " + snapshot);
+            if (clusterNode != null) {
+                System.out.println("Capacity is managed by the cluster; only the rates were applied.");
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Configuration rejected: " + e.getMessage());
+        }
+    }
+
     /**
      * Adds a new vendor to the simulation if it is running.
      * Assigns unique vendor ID and submits vendor task to executor service.
@@ -227,6 +375,7 @@ public class TicketingSystemCLI {
             String vendorName = "Vendor-" + ++vendorCounter;
             Future<?> task = executorService.submit(new Vendor(vendorName, ticketPool));
             vendorTasks.add(task);
+            awaitActorRegistration();
             System.out.println("New vendor added. Total vendors: " + vendorTasks.size());
             outputConsole.printSystem(
                     String.format("New Vendor added by Admin. Total Vendors: %d", vendorTasks.size()));
@@ -242,8 +391,9 @@ public class TicketingSystemCLI {
     private void addCustomer() {
         if (isRunning) {
             String customerName = "Customer-" + ++customerCounter;
-            Future<?> task = executorService.submit(new Customer(customerName, ticketPool));
+            Future<?> task = executorService.submit(new Customer(customerName, ticketPool, waitingRoom));
             customerTasks.add(task);
+            awaitActorRegistration();
             System.out.println("New customer added. Total customers: " + customerTasks.size());
             outputConsole.printSystem(
                     String.format("New Customer added by Admin. Total Customers: %d", customerTasks.size()));
@@ -259,8 +409,9 @@ public class TicketingSystemCLI {
     private void addVIPCustomer() {
         if (isRunning) {
             String vipCustomerName = "VIP-" + ++vipCustomerCounter;
-            Future<?> task = executorService.submit(new VIPCustomer(vipCustomerName, ticketPool));
+            Future<?> task = executorService.submit(new VIPCustomer(vipCustomerName, ticketPool, waitingRoom));
             vipCustomerTasks.add(task);
+            awaitActorRegistration();
             System.out.println("New VIP customer added. Total VIP customers: " + vipCustomerTasks.size());
             outputConsole.printSystem(
                     String.format("New VIP Customer added by Admin. Total VIP Customers: %d", vipCustomerTasks.size()));
@@ -332,6 +483,7 @@ public class TicketingSystemCLI {
             vendorCounter = 0;
             customerCounter = 0;
             vipCustomerCounter = 0;
+            ticketPool.getFairnessTracker().reset();
 
             int boxWidth = 50;
             String title = "SET UP USERS";
@@ -352,11 +504,57 @@ public class TicketingSystemCLI {
             for (int i = 0; i < vipCustomerCount; i++) {
                 addVIPCustomer();
             }
+            if (clock instanceof VirtualClock) {
+                advanceSimulation();
+            }
         } else {
             System.out.println("Simulation is already running.");
         }
     }
 
+    /**
+     * Runs a virtual-clock simulation forward by a user-specified amount of
+     * simulated time and reports how long that took in real time. Has no
+     * effect when the simulation runs on the system clock.
+     */
+    private void advanceSimulation() {
+        if (!(clock instanceof VirtualClock)) {
+            System.out.println("The simulation runs in real time. Start with -Dticketing.clock=virtual to use this.");
+            return;
+        }
+        if (!isRunning) {
+            System.out.println("Please start the simulation first.");
+            return;
+        }
+        VirtualClock virtualClock = (VirtualClock) clock;
+        int seconds = getIntInput("Enter simulated time to run (seconds): ");
+        long started = System.nanoTime();
+        try {
+            virtualClock.advanceBy(seconds * 1000L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        System.out.println(String.format("Simulated %d s in %d ms. Simulated clock: %d s, tickets sold: %d",
+                seconds, (System.nanoTime() - started) / 1_000_000, virtualClock.getElapsedMillis() / 1000,
+                ticketPool.getTicketsSold()));
+    }
+
+    /**
+     * On a virtual clock, waits for the actor just submitted to register so
+     * actors always join the simulation in the same order.
+     */
+    private void awaitActorRegistration() {
+        actorsSubmitted++;
+        if (clock instanceof VirtualClock) {
+            try {
+                ((VirtualClock) clock).awaitRegistrations(actorsSubmitted);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     /**
      * Stops the simulation by cancelling all running tasks and
      * shutting down the executor service. Clears all task lists
@@ -406,10 +604,35 @@ public class TicketingSystemCLI {
         System.out.println("Active vendors: " + vendorTasks.size());
         System.out.println("Active customers: " + customerTasks.size());
         System.out.println("Active VIP customers: " + vipCustomerTasks.size());
+        System.out.println(String.format("Waiting room: %d queued, admitting %.1f/s, estimated wait %d ms, %d rate limited",
+                waitingRoom.getQueueLength(), waitingRoom.getAdmissionRate(), waitingRoom.getEstimatedWaitMillis(),
+                waitingRoom.getRejectedCount()));
+        System.out.println("Configuration: " + configuration.getSnapshot());
+        if (clock instanceof VirtualClock) {
+            System.out.println("Simulated time: " + ((VirtualClock) clock).getElapsedMillis() / 1000 + " s");
+        }
+        if (clusterNode != null) {
+            System.out.println("Cluster: " + clusterNode.getStatus());
+        }
         System.out.println("System is " + (isRunning ? "RUNNING" : "STOPPED"));
         System.out.println("-".repeat(82));
     }
 
+    /**
+     * Displays how tickets have been distributed across customers and VIP
+     * customers in the current session: per-buyer acquisitions and lock wait
+     * times, Jain's fairness index, the max/min ratio and starved buyers.
+     */
+    private void printFairness() {
+        int boxWidth = 80;
+        String title = "FAIRNESS REPORT";
+
+        printBorder(title, boxWidth);
+        String lockMode = ticketPool.isFairLock() ? "fair (FIFO)" : "unfair (barging)";
+        System.out.print(ticketPool.getFairnessTracker().report(lockMode));
+        System.out.println("-".repeat(82));
+    }
+
     /**
      * Safely exits the simulation by stopping all processes,
      * closing resources, and terminating the application.
@@ -419,12 +642,38 @@ public class TicketingSystemCLI {
             stopSimulation();
         }
         System.out.println("\nExiting simulation....\n");
+        if (configWatcher != null) {
+            configWatcher.interrupt();
+        }
+        if (clusterNode != null) {
+            leaveCluster();
+        }
+        if (profiler.isRecording()) {
+            handleProfileCommand("stop");
+        }
         scanner.close();
-        outputConsole.clear();
-        outputConsole.dispose();
+        outputConsole.close();
         System.exit(0);
     }
 
+    /**
+     * Hands this node's tickets over to the rest of the cluster and waits
+     * briefly for the hand-over to be sent.
+     */
+    private void leaveCluster() {
+        System.out.println("Handing tickets over to the cluster...");
+        clusterNode.leave();
+        long deadline = System.currentTimeMillis() + 6000;
+        while (!clusterNode.isStopped() && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
     /**
      * Utility method to get validated integer input from user.
      * Ensures input is a positive number.
@@ -448,17 +697,53 @@ public class TicketingSystemCLI {
     }
 
     /**
-     * Application entry point. Initializes the GUI output console
-     * and starts the ticketing system CLI.
+     * Application entry point. Starts the ticketing system CLI, which opens
+     * the GUI output console once it is configured.
      * 
-     * @param args Command line arguments (not used)
+     * @param args Command line arguments: "--config <file>" to read the
+     *             configuration from a watched .properties or .json file;
+     *             "--node <id> --port <port> [--peers host:port,...]
+     *             [--bind host]" to run as a node of a clustered ticket pool
+     *             (listening on 127.0.0.1 unless --bind is given, e.g.
+     *             --bind 0.0.0.0 for peers on other hosts).
+     *             Run with -Dticketing.fairLock=true to grant purchases in
+     *             arrival order, and -Dticketing.buyerRate / buyerBurst to set
+     *             the per-buyer rate limit (attempts per second / burst).
+     *             Run with -Dticketing.clock=virtual to simulate on a
+     *             discrete-event clock instead of in real time.
      */
     public static void main(String[] args) {
-        // Initialize the GUI windows
-        OutputConsole outputConsole = OutputConsole.getInstance();
-        outputConsole.setVisible(true);
+        Path configFile = null;
+        int nodeId = -1;
+        int port = 0;
+        String bindHost = "127.0.0.1";
+        List<InetSocketAddress> peers = new ArrayList<>();
+        for (int i = 0; i + 1 < args.length; i++) {
+            switch (args[i]) {
+                case "--config":
+                    configFile = Paths.get(args[++i]);
+                    break;
+                case "--node":
+                    nodeId = Integer.parseInt(args[++i]);
+                    break;
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--peers":
+                    peers = ClusterNode.parsePeers(args[++i]);
+                    break;
+                case "--bind":
+                    bindHost = args[++i];
+                    break;
+                default:
+                    System.out.println("Ignoring unknown argument: " + args[i]);
+            }
+        }
 
-        TicketingSystemCLI cli = new TicketingSystemCLI();
+        TicketingSystemCLI cli = new TicketingSystemCLI(configFile);
+        if (nodeId >= 0) {
+            cli.enableCluster(nodeId, bindHost, port > 0 ? port : 7000 + nodeId, peers);
+        }
         cli.start();
     }
 }
@@ -5,26 +5,36 @@
  */
 public class VIPCustomer extends Customer {
     /**
-     * Creates a new VIP customer with a specific name and associated ticket pool
+     * Creates a new VIP customer with a specific name, associated ticket pool
+     * and waiting room
      */
-    public VIPCustomer(String name, TicketPool ticketPool) {
-        super(name, ticketPool);
+    public VIPCustomer(String name, TicketPool ticketPool, WaitingRoom waitingRoom) {
+        super(name, ticketPool, waitingRoom);
     }
 
     /**
      * Main VIP customer operation loop that continuously attempts to get tickets.
-     * Uses VIP-specific ticket removal method for priority access.
+     * Uses VIP-specific ticket removal method for priority access and skips
+     * the waiting room queue, but is still held to the per-buyer rate limit.
      * Runs until the thread is interrupted.
      */
     @Override
     public void run() {
+        SimulationClock clock = getTicketPool().getClock();
+        clock.register();
+        TicketingEvents.actorLifecycle(getName(), "VIP", "started");
         try {
             while (!Thread.currentThread().isInterrupted()) {
-                getTicketPool().removeVIPTicket(getName());
-                Thread.sleep(getCustomerRetrievalRate());
+                if (getWaitingRoom().tryAcquireToken(getBuyerId())) {
+                    getTicketPool().removeVIPTicket(getBuyerId(), getName());
+                }
+                clock.sleep(getCustomerRetrievalRate());
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+        } finally {
+            clock.unregister();
+            TicketingEvents.actorLifecycle(getName(), "VIP", "stopped");
         }
     }
 }
\ No newline at end of file
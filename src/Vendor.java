@@ -4,7 +4,7 @@
  * until interrupted.
  */
 public class Vendor implements Runnable {
-    private static int ticketReleaseRate;
+    private static volatile int ticketReleaseRate;
     private final String name;
     private final TicketPool ticketPool;
 
@@ -17,7 +17,8 @@ public class Vendor implements Runnable {
     }
 
     /**
-     * Sets how frequently vendors add tickets to the pool (in milliseconds)
+     * Sets how frequently vendors add tickets to the pool (in milliseconds).
+     * Running vendors pick up the new rate on their next cycle.
      */
     public static void setTicketReleaseRate(int rate) {
         ticketReleaseRate = rate;
@@ -26,17 +27,23 @@ public class Vendor implements Runnable {
     /**
      * Main vendor operation loop that continuously adds tickets to the pool.
      * Runs until the thread is interrupted, adding one ticket at a time
-     * with delays between additions.
+     * with delays between additions measured on the pool's clock.
      */
     @Override
     public void run() {
+        SimulationClock clock = ticketPool.getClock();
+        clock.register();
+        TicketingEvents.actorLifecycle(name, "Vendor", "started");
         try {
             while (!Thread.currentThread().isInterrupted()) {
                 ticketPool.addTickets(1, name);
-                Thread.sleep(ticketReleaseRate);
+                clock.sleep(ticketReleaseRate);
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+        } finally {
+            clock.unregister();
+            TicketingEvents.actorLifecycle(name, "Vendor", "stopped");
         }
     }
 }
\ No newline at end of file
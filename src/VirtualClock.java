@@ -0,0 +1,292 @@
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Discrete-event clock for running long simulations in seconds.
+ * Time only moves when every registered actor is idle, i.e. sleeping or
+ * waiting for a lock held by another actor. The clock then jumps straight to
+ * the earliest scheduled wake-up and releases exactly that one actor, so
+ * actors run one at a time in a fixed order and the same scenario always
+ * produces the same result.
+ *
+ * Time never moves past the horizon set by {@link #advanceBy(long)}, which
+ * lets the caller run the simulation for a chosen amount of simulated time.
+ */
+public class VirtualClock implements SimulationClock {
+    private final long epochMillis = System.currentTimeMillis();
+    private final PriorityQueue<Sleeper> sleepers = new PriorityQueue<>();
+    private final ThreadLocal<Boolean> registered = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    private long nowNanos;
+    private long horizonNanos;
+    private long sequence;
+    private int participants;
+    private int idle;
+    private long registrations;
+
+    @Override
+    public synchronized long nanoTime() {
+        return nowNanos;
+    }
+
+    @Override
+    public synchronized long currentTimeMillis() {
+        return epochMillis + TimeUnit.NANOSECONDS.toMillis(nowNanos);
+    }
+
+    /**
+     * Parks the calling actor until simulated time reaches now + millis.
+     * A thread that has not registered is treated as an actor for the
+     * duration of the call.
+     */
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        boolean temporary = !registered.get();
+        if (temporary) {
+            register();
+        }
+        try {
+            synchronized (this) {
+                park(nowNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis)));
+            }
+        } finally {
+            if (temporary) {
+                unregister();
+            }
+        }
+    }
+
+    /**
+     * Creates a FIFO lock that the clock can see actors waiting on. Virtual
+     * locks are always granted in arrival order to keep runs reproducible,
+     * so {@code fair} is ignored and the lock reports itself as fair.
+     */
+    @Override
+    public SimulationLock newLock(boolean fair) {
+        return new VirtualLock();
+    }
+
+    /**
+     * Registers the calling thread as an actor. The actor is scheduled like a
+     * sleeper waking at the current time, so actors start one at a time.
+     */
+    @Override
+    public void register() {
+        synchronized (this) {
+            registered.set(Boolean.TRUE);
+            participants++;
+            registrations++;
+            notifyAll();
+            try {
+                park(nowNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void unregister() {
+        if (registered.get()) {
+            registered.set(Boolean.FALSE);
+            participants--;
+            advanceIfIdle();
+        }
+    }
+
+    /**
+     * Blocks until at least the given number of actors have ever registered.
+     * Used after submitting an actor so actors join in a fixed order.
+     */
+    public synchronized void awaitRegistrations(long count) throws InterruptedException {
+        while (registrations < count) {
+            wait();
+        }
+    }
+
+    /**
+     * Lets the simulation run for the given amount of simulated time and
+     * blocks until every actor is idle at or beyond that point.
+     *
+     * @param millis Simulated time to run for
+     */
+    public synchronized void advanceBy(long millis) throws InterruptedException {
+        horizonNanos = nowNanos + TimeUnit.MILLISECONDS.toNanos(millis);
+        advanceIfIdle();
+        while (idle < participants || (!sleepers.isEmpty() && sleepers.peek().wakeNanos <= horizonNanos)) {
+            wait();
+        }
+        nowNanos = Math.max(nowNanos, horizonNanos);
+    }
+
+    /**
+     * Returns the simulated time elapsed since the clock was created, in
+     * milliseconds
+     */
+    public synchronized long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(nowNanos);
+    }
+
+    /**
+     * Parks the current thread as a sleeper until the clock wakes it.
+     * Must be called while holding this clock's monitor.
+     */
+    private void park(long wakeNanos) throws InterruptedException {
+        Sleeper sleeper = new Sleeper(wakeNanos, sequence++);
+        sleepers.add(sleeper);
+        idle++;
+        advanceIfIdle();
+        try {
+            while (!sleeper.woken) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            if (!sleeper.woken) {
+                sleepers.remove(sleeper);
+                idle--;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * When every actor is idle, moves time to the earliest wake-up within the
+     * horizon and releases that one sleeper. Must be called while holding
+     * this clock's monitor.
+     */
+    private void advanceIfIdle() {
+        if (participants > 0 && idle >= participants && !sleepers.isEmpty()
+                && sleepers.peek().wakeNanos <= Math.max(horizonNanos, nowNanos)) {
+            Sleeper next = sleepers.poll();
+            nowNanos = Math.max(nowNanos, next.wakeNanos);
+            next.woken = true;
+            idle--;
+        }
+        notifyAll();
+    }
+
+    /**
+     * A parked thread waiting for simulated time to reach its wake-up time
+     */
+    private static final class Sleeper implements Comparable<Sleeper> {
+        private final long wakeNanos;
+        private final long order;
+        private boolean woken;
+
+        private Sleeper(long wakeNanos, long order) {
+            this.wakeNanos = wakeNanos;
+            this.order = order;
+        }
+
+        @Override
+        public int compareTo(Sleeper other) {
+            int byTime = Long.compare(wakeNanos, other.wakeNanos);
+            return byTime != 0 ? byTime : Long.compare(order, other.order);
+        }
+    }
+
+    /**
+     * FIFO lock whose waiters count as idle while another thread holds it.
+     * On release the lock is handed directly to the next waiter, which is
+     * then scheduled like a sleeper waking at the current time. The clock
+     * never sees the lock free while its next owner is counted as idle, and
+     * the new owner only runs once the releasing actor goes idle.
+     */
+    private final class VirtualLock implements SimulationLock {
+        private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+        private Thread owner;
+        private int holds;
+
+        @Override
+        public void lock() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    acquire();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void unlock() {
+            synchronized (VirtualClock.this) {
+                if (owner != Thread.currentThread()) {
+                    throw new IllegalMonitorStateException();
+                }
+                if (--holds > 0) {
+                    return;
+                }
+                Waiter next = waiters.poll();
+                owner = next == null ? null : next.thread;
+                if (next != null) {
+                    holds = 1;
+                    if (next.actor) {
+                        next.turn = new Sleeper(nowNanos, sequence++);
+                        sleepers.add(next.turn);
+                    }
+                }
+                VirtualClock.this.notifyAll();
+            }
+        }
+
+        @Override
+        public boolean isFair() {
+            return true;
+        }
+
+        private void acquire() throws InterruptedException {
+            synchronized (VirtualClock.this) {
+                Thread current = Thread.currentThread();
+                if (owner == null || owner == current) {
+                    owner = current;
+                    holds++;
+                    return;
+                }
+                Waiter waiter = new Waiter(current, registered.get());
+                waiters.add(waiter);
+                if (waiter.actor) {
+                    idle++;
+                    advanceIfIdle();
+                }
+                boolean interrupted = false;
+                while (owner != current || (waiter.actor && !waiter.turn.woken)) {
+                    try {
+                        VirtualClock.this.wait();
+                    } catch (InterruptedException e) {
+                        if (owner != current) {
+                            waiters.remove(waiter);
+                            if (waiter.actor) {
+                                idle--;
+                            }
+                            throw e;
+                        }
+                        interrupted = true; // already handed the lock, wait for our turn to run
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * A thread queued for a virtual lock
+     */
+    private static final class Waiter {
+        private final Thread thread;
+        private final boolean actor;
+        private Sleeper turn;
+
+        private Waiter(Thread thread, boolean actor) {
+            this.thread = thread;
+            this.actor = actor;
+        }
+    }
+}
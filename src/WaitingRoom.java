@@ -0,0 +1,275 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Admission-control stage in front of the ticket pool. Buyers take a queue
+ * position from an atomic sequence and are let through to the pool at a rate
+ * that follows the pool's measured sales throughput, so a spike of customers
+ * waits here instead of piling onto the purchase lock.
+ * Each buyer is also rate limited by its own token bucket. Buckets live in
+ * an open-addressing table keyed by buyer id and are updated with
+ * compare-and-set, so no locks are taken; the table doubles when it is half
+ * full, and only buyers touching it during that copy wait for it.
+ * Time is read from the pool's clock.
+ */
+public class WaitingRoom {
+    private static final int INITIAL_SLOTS = 1024;
+    private static final int MOVED = -1; // key of an empty slot in a table being copied
+    private static final long FROZEN = -1; // state of a slot already copied to a larger table
+    private static final long TIME_BITS = 40;
+    private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+    private static final double MIN_ADMISSION_RATE = 1.0;
+    private static final double INITIAL_ADMISSION_RATE = 10.0;
+    private static final double ADMISSION_HEADROOM = 1.2;
+    private static final long ADMISSION_BURST = 5;
+    private static final long MEASURE_INTERVAL_NANOS = 1_000_000_000L;
+    private static final long MAX_POLL_MILLIS = 50;
+
+    private final TicketPool ticketPool;
+    private final SimulationClock clock;
+    private final int tokensPerSecond;
+    private final long burstMilliTokens;
+    private final long startMillis;
+    private volatile BucketTable buckets = new BucketTable(INITIAL_SLOTS);
+    private final AtomicLong nextPosition = new AtomicLong();
+    private final AtomicLong admittedUpTo = new AtomicLong();
+    private final AtomicLong lastAdmissionNanos;
+    private final AtomicLong lastMeasureNanos;
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile long lastMeasuredSold;
+    private volatile double admissionRate = INITIAL_ADMISSION_RATE;
+
+    /**
+     * Creates a waiting room in front of the given pool
+     *
+     * @param ticketPool      The pool whose throughput sets the admission rate
+     * @param tokensPerSecond Sustained purchase attempts allowed per buyer
+     * @param burst           Attempts a buyer may make back to back
+     */
+    public WaitingRoom(TicketPool ticketPool, int tokensPerSecond, int burst) {
+        if (tokensPerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("Rate limit and burst must be over 0.");
+        }
+        if (burst * 1000L >= 1L << (64 - TIME_BITS)) {
+            throw new IllegalArgumentException("Burst is too large.");
+        }
+        this.ticketPool = ticketPool;
+        this.clock = ticketPool.getClock();
+        this.startMillis = clock.currentTimeMillis();
+        this.lastAdmissionNanos = new AtomicLong(clock.nanoTime());
+        this.lastMeasureNanos = new AtomicLong(clock.nanoTime());
+        this.tokensPerSecond = tokensPerSecond;
+        this.burstMilliTokens = burst * 1000L;
+    }
+
+    /**
+     * Takes a buyer through the waiting room: checks its rate limit, gives it
+     * a queue position and blocks until that position is admitted.
+     *
+     * @param buyerId Unique id of the buyer
+     * @return true if the buyer may now try to purchase, false if it was
+     *         rate limited or there is nothing to sell
+     * @throws InterruptedException if the buyer is stopped while waiting
+     */
+    public boolean admit(int buyerId) throws InterruptedException {
+        if (ticketPool.getTicketCount() == 0) {
+            ticketPool.recordUnmetDemand();
+            return false;
+        }
+        if (!tryAcquireToken(buyerId)) {
+            return false;
+        }
+        long position = nextPosition.getAndIncrement();
+        while (true) {
+            advance();
+            long ahead = position - admittedUpTo.get();
+            if (ahead < 0) {
+                return true;
+            }
+            long waitMillis = (long) ((ahead + 1) * 1000 / admissionRate);
+            clock.sleep(Math.max(1, Math.min(MAX_POLL_MILLIS, waitMillis)));
+        }
+    }
+
+    /**
+     * Takes one token from the buyer's bucket without queueing. Used for
+     * buyers that skip the queue but must still respect the rate limit.
+     *
+     * @param buyerId Unique id of the buyer (must be over 0)
+     * @return true if a token was available
+     */
+    public boolean tryAcquireToken(int buyerId) {
+        FairnessTracker.checkBuyerId(buyerId);
+        long nowMillis = clock.currentTimeMillis() - startMillis;
+        while (true) {
+            BucketTable table = buckets;
+            int slot = table.slotFor(buyerId);
+            if (slot < 0) {
+                grow(table);
+                continue;
+            }
+            long state = table.states.get(slot);
+            if (state == FROZEN) {
+                Thread.onSpinWait(); // copied to a larger table that is about to be published
+                continue;
+            }
+            long tokens;
+            if (state == 0) {
+                tokens = burstMilliTokens; // first use of this buyer's bucket
+            } else {
+                long elapsed = Math.max(0, nowMillis - (state & TIME_MASK));
+                tokens = Math.min(burstMilliTokens, (state >>> TIME_BITS) + elapsed * tokensPerSecond);
+            }
+            if (tokens < 1000) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            long updated = ((tokens - 1000) << TIME_BITS) | (nowMillis & TIME_MASK);
+            if (table.states.compareAndSet(slot, state, updated == 0 ? 1 : updated)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of buyers waiting to be admitted
+     */
+    public long getQueueLength() {
+        return Math.max(0, nextPosition.get() - admittedUpTo.get());
+    }
+
+    /**
+     * Returns the estimated wait, in milliseconds, for a buyer joining now
+     */
+    public long getEstimatedWaitMillis() {
+        return (long) (getQueueLength() * 1000 / admissionRate);
+    }
+
+    /**
+     * Returns the current admission rate in buyers per second
+     */
+    public double getAdmissionRate() {
+        return admissionRate;
+    }
+
+    /**
+     * Returns how many attempts were turned away by the rate limit
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Moves the admission frontier forward by the number of buyers the
+     * current rate allows since the last move, and re-measures the pool's
+     * throughput once per interval. The rate doubles while the pool keeps up
+     * with every admitted buyer and otherwise settles just above the measured
+     * throughput. Unused admissions only accumulate up to a small burst
+     * beyond the buyers already queued.
+     */
+    private void advance() {
+        long now = clock.nanoTime();
+        remeasure(now);
+
+        long last = lastAdmissionNanos.get();
+        double rate = admissionRate;
+        long permits = (long) ((now - last) * rate / 1e9);
+        if (permits <= 0) {
+            return;
+        }
+        long consumedNanos = (long) (permits * 1e9 / rate);
+        if (lastAdmissionNanos.compareAndSet(last, last + consumedNanos)) {
+            long limit = nextPosition.get() + ADMISSION_BURST;
+            admittedUpTo.accumulateAndGet(permits, (current, add) -> Math.max(current, Math.min(current + add, limit)));
+        }
+    }
+
+    private void remeasure(long now) {
+        long last = lastMeasureNanos.get();
+        if (now - last < MEASURE_INTERVAL_NANOS || !lastMeasureNanos.compareAndSet(last, now)) {
+            return;
+        }
+        long sold = ticketPool.getTicketsSold();
+        double throughput = (sold - lastMeasuredSold) * 1e9 / (now - last);
+        lastMeasuredSold = sold;
+        double rate = throughput * ADMISSION_HEADROOM;
+        if (getQueueLength() > 0 && throughput >= admissionRate * 0.8) {
+            rate = Math.max(rate, admissionRate * 2); // the pool kept up with everyone admitted, probe higher
+        }
+        admissionRate = Math.max(MIN_ADMISSION_RATE, rate);
+    }
+
+    /**
+     * Replaces a table that is half full (or being copied) with one twice its
+     * size. Each slot of the old table is frozen as it is copied, so a
+     * concurrent update either lands before the copy or retries on the new
+     * table.
+     */
+    private synchronized void grow(BucketTable old) {
+        if (buckets != old) {
+            return; // already replaced
+        }
+        BucketTable larger = new BucketTable(old.keys.length() * 2);
+        for (int slot = 0; slot < old.keys.length(); slot++) {
+            int key = old.keys.get(slot);
+            while (key == 0 && !old.keys.compareAndSet(slot, 0, MOVED)) {
+                key = old.keys.get(slot); // a buyer claimed it meanwhile
+            }
+            if (key > 0) {
+                long state = old.states.getAndSet(slot, FROZEN);
+                int copy = larger.slotFor(key);
+                larger.states.set(copy, state);
+            }
+        }
+        buckets = larger;
+    }
+
+    /**
+     * Token buckets keyed by buyer id with linear probing. A slot's key is 0
+     * until a buyer claims it and never changes afterwards, except to MOVED
+     * while an empty slot is being copied.
+     */
+    private static final class BucketTable {
+        private final AtomicIntegerArray keys;
+        private final AtomicLongArray states;
+        private final AtomicInteger claimed = new AtomicInteger();
+
+        private BucketTable(int slots) {
+            keys = new AtomicIntegerArray(slots);
+            states = new AtomicLongArray(slots);
+        }
+
+        /**
+         * Returns the buyer's slot, claiming an empty one on first use, or
+         * -1 if the table is half full or being copied and must grow first
+         */
+        private int slotFor(int buyerId) {
+            int mask = keys.length() - 1;
+            int h = buyerId * 0x9E3779B9;
+            int slot = (h ^ (h >>> 16)) & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                int key = keys.get(slot);
+                if (key == buyerId) {
+                    return slot;
+                }
+                if (key == MOVED) {
+                    return -1;
+                }
+                if (key == 0) {
+                    if ((claimed.get() + 1) * 2 > keys.length()) {
+                        return -1;
+                    }
+                    if (keys.compareAndSet(slot, 0, buyerId)) {
+                        claimed.incrementAndGet();
+                        return slot;
+                    }
+                    continue; // lost the race for this slot, look at it again
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+    }
+}